@@ -7,12 +7,16 @@ echo "Step 2: Dot"
 mkdir -p output/${OUTPUT}/svg
 mkdir -p output/${OUTPUT}/png
 cd output/${OUTPUT}
+# Only render graphs that changed in this run, or that were never rendered.
+CHANGED="${OUTPUT}_changed.txt"
 for i in *.dot;
   do
+    if [ -f "${CHANGED}" ] && ! grep -qxF "${i}" "${CHANGED}" && [ -f "png/${i:0:-4}.png" ] && [ -f "svg/${i:0:-4}.svg" ]; then
+      continue
+    fi
     echo "  ${i}"
     dot -Tpng $i -o png/${i:0:-4}.png
     dot -Tsvg $i -o svg/${i:0:-4}.svg
   done
 cd ../..
 echo "Step 4: Done"
-
@@ -0,0 +1,30 @@
+package hylke.dotgen;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that allocation rates are
+ * reported next to the timings. Takes the normal JMH command line options, for
+ * example: -p config=configSta.json,configOms.json Generate
+ *
+ * @author hylke
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(options)
+                .addProfiler(GCProfiler.class);
+        if (options.getIncludes().isEmpty()) {
+            builder.include("hylke\\.dotgen\\..*Benchmark");
+        }
+        new Runner(builder.build()).run();
+    }
+}
@@ -0,0 +1,84 @@
+package hylke.dotgen;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Files;
+import java.util.Locale;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Shared setup for the benchmarks. The benchmarks run on the documents of
+ * normal generator configuration files, given with -p config=file.json, or
+ * with the system property dotgen.bench.config. A configuration of the form
+ * synth:style:classes, like synth:oms:1000, runs on a document generated by
+ * the SpecGenerator, in a temporary directory, so scaling curves can be
+ * measured with -p config=synth:sta:100,synth:sta:1000,synth:sta:10000.
+ *
+ * @author hylke
+ */
+final class BenchmarkSupport {
+
+    static final String CONFIG_PROPERTY = "dotgen.bench.config";
+    static final String SYNTH_PREFIX = "synth:";
+
+    private BenchmarkSupport() {
+        // Utility class
+    }
+
+    static JsonObject readConfig(String config) throws IOException {
+        String path = Utils.isNullOrEmpty(config) ? System.getProperty(CONFIG_PROPERTY) : config;
+        if (Utils.isNullOrEmpty(path)) {
+            throw new IllegalArgumentException("No configuration given, use -p config=<file> or -jvmArgsAppend -D" + CONFIG_PROPERTY + "=<file>");
+        }
+        if (path.startsWith(SYNTH_PREFIX)) {
+            return synthConfig(path.substring(SYNTH_PREFIX.length()));
+        }
+        return JsonParser.parseString(FileUtils.readFileToString(new File(path), "UTF-8")).getAsJsonObject();
+    }
+
+    private static JsonObject synthConfig(String value) throws IOException {
+        String[] parts = value.split(":");
+        if (parts.length != 2) {
+            throw new IllegalArgumentException("Synthetic configuration must be of the form " + SYNTH_PREFIX + "style:classes, not " + SYNTH_PREFIX + value);
+        }
+        SpecGenerator generator = new SpecGenerator()
+                .setStyle(SpecGenerator.Style.valueOf(parts[0].toUpperCase(Locale.ROOT)))
+                .setWord(parts[0].equalsIgnoreCase("oms"))
+                .setClasses(Integer.parseInt(parts[1]))
+                .setImportDepth(6)
+                .setCycles(2);
+        File dir = Files.createTempDirectory("dotgen-bench").toFile();
+        dir.deleteOnExit();
+        File source = new File(dir, parts[0] + ".html");
+        source.deleteOnExit();
+        generator.write(source);
+        return generator.createConfig(source, new File(dir, "out/" + parts[0]).getPath());
+    }
+
+    static File sourceFile(JsonObject config) {
+        return new File(config.get("source").getAsString());
+    }
+
+    static Parser createParser(JsonObject config) throws ConfigurationException, ReflectiveOperationException {
+        JsonObject parserJson = config.getAsJsonObject("parser");
+        Class<?> parserClass = Class.forName(parserJson.get("className").getAsString());
+        Parser parser;
+        try {
+            parser = (Parser) parserClass.getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException ex) {
+            throw new ConfigurationException("Failed to create parser " + parserClass, ex);
+        }
+        parser.configure(parserJson.get("classConfig"), null, null, null);
+        return parser;
+    }
+
+    static Generator createGenerator(JsonObject config) throws ConfigurationException {
+        Generator generator = new Generator();
+        generator.configure(config, null, null, null);
+        return generator;
+    }
+}
@@ -0,0 +1,87 @@
+package hylke.dotgen;
+
+import hylke.dotgen.model.ClosureIndex;
+import hylke.dotgen.model.GraphStore;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The generation steps of Generator, on a parsed document. The artifacts are
+ * written to a null writer, so only the generation itself is measured.
+ *
+ * @author hylke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GenerateBenchmark {
+
+    @Param({""})
+    public String config;
+
+    private Generator generator;
+    private final Writer out = Writer.nullWriter();
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        generator = BenchmarkSupport.createGenerator(BenchmarkSupport.readConfig(config));
+        generator.load();
+    }
+
+    /**
+     * Building the import closures of all classes, which replaced the
+     * recursive gatherFrom.
+     */
+    @Benchmark
+    public void gatherFrom(Blackhole bh) {
+        GraphStore store = generator.getGraphStore();
+        ClosureIndex closure = new ClosureIndex(store);
+        for (int id = 0; id < store.getClassCount(); id++) {
+            bh.consume(closure.getRequirements(id));
+        }
+    }
+
+    @Benchmark
+    public void generateDotAll() throws IOException {
+        generator.emitDot(out, null, false);
+    }
+
+    @Benchmark
+    public void generateDotAllClasses() throws IOException {
+        generator.emitDot(out, null, true);
+    }
+
+    @Benchmark
+    public void generateDotPerClass() throws IOException {
+        for (int classId = 0; classId < generator.getGraphStore().getClassCount(); classId++) {
+            generator.emitClassDot(out, classId);
+        }
+    }
+
+    @Benchmark
+    public void generateReqHtml() throws IOException {
+        generator.emitReqHtml(out);
+    }
+
+    @Benchmark
+    public void generateTtl() throws IOException {
+        generator.emitTtl(out);
+    }
+}
@@ -0,0 +1,52 @@
+package hylke.dotgen;
+
+import com.google.gson.JsonObject;
+import hylke.dotgen.model.Data;
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parses a complete document with the parser of a configuration, ParserSta or
+ * ParserOms.
+ *
+ * @author hylke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({""})
+    public String config;
+
+    private Parser parser;
+    private File source;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        JsonObject json = BenchmarkSupport.readConfig(config);
+        parser = BenchmarkSupport.createParser(json);
+        source = BenchmarkSupport.sourceFile(json);
+    }
+
+    @Benchmark
+    public Data parseSource() throws Exception {
+        parser.reset();
+        return parser.parseSource(source).getDocumentData();
+    }
+}
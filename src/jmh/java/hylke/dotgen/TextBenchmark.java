@@ -0,0 +1,114 @@
+package hylke.dotgen;
+
+import hylke.dotgen.model.Data;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The small text operations that run for every table cell: cleaning cell
+ * content, matching ignore patterns and finding or creating model entities.
+ *
+ * @author hylke
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextBenchmark {
+
+    private static final String NAME_SPACE = "http://www.opengis.net/spec/OMS/3.0";
+
+    private static final String[] CELLS = {
+        "<p class=\"MsoNormal\"><span lang=\"EN-GB\">/req/obs-core/AbstractObservation</span></p>",
+        "<p>http://www.opengis.net/spec/OMS/3.0/req/obs-cpt/Observation</p>",
+        "<td><p class=MsoNormal><b><span style='font-size:9.0pt'>Requirement</span></b><o:p></o:p></p></td>",
+        "The <i>Observation</i> shall&nbsp;have an attribute <code>phenomenonTime</code>\n    with   the    time of the observation.",
+        "<a href=\"#_Toc123\">ISO 19103:2015 Geographic information -- Conceptual schema language</a>",
+        "/req/sam-basic/SpatialSample &#8211; with a geometry",
+        "<span style='mso-bookmark:_Ref1'></span><span lang=EN-GB style='mso-bidi-font-weight:bold'>/conf/obs-basic</span>"
+    };
+
+    private static final String[] DEFINITIONS = {
+        NAME_SPACE + "/req/obs-core/AbstractObservation",
+        NAME_SPACE + "/req/obs-cpt/Observation",
+        "/req/obs-basic/Observation",
+        "/req/sam-core/Sample",
+        NAME_SPACE + "/req/obs-core/AbstractObservation",
+        "/req/obs-cpt/Observation",
+        "/req/sam-basic/SpatialSample",
+        "/req/obs-basic/ObservationCharacteristics"
+    };
+
+    private final ParserSta parser = new ParserSta();
+    private final Set<Pattern> patterns = new LinkedHashSet<>();
+    private final PatternSet patternSet = new PatternSet();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (String regex : new String[]{"ISO 19103.*", "ISO 19107.*", "ISO 19108.*", ".*[{].*", "http://www.opengis.net/doc/.*"}) {
+            patterns.add(Pattern.compile(regex));
+            patternSet.add(regex);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(7)
+    public void cleanContent(Blackhole bh) {
+        for (String cell : CELLS) {
+            bh.consume(parser.cleanContent(cell, false));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(7)
+    public void cleanContentNoSpaces(Blackhole bh) {
+        for (String cell : CELLS) {
+            bh.consume(parser.cleanContent(cell, true));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void matchesAnyOf(Blackhole bh) {
+        for (String definition : DEFINITIONS) {
+            bh.consume(Utils.matchesAnyOf(definition, patterns));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void patternSetMatches(Blackhole bh) {
+        for (String definition : DEFINITIONS) {
+            bh.consume(patternSet.matches(definition));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(24)
+    public Data findOrCreate() {
+        Data data = new Data(NAME_SPACE);
+        for (String definition : DEFINITIONS) {
+            data.findOrCreateRequirementClass(definition);
+            data.findOrCreateRequirement(definition);
+            data.findOrCreateRecommendation(definition);
+        }
+        return data;
+    }
+}
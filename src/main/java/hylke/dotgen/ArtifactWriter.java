@@ -0,0 +1,316 @@
+package hylke.dotgen;
+
+import hylke.dotgen.jfr.ArtifactEvent;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes generated artifacts, leaving files with identical content untouched.
+ *
+ * The SHA-256 of each artifact is kept in a manifest, in the format of
+ * sha256sum, so that unchanged files can be recognised without reading them.
+ * Files that are not in the manifest are compared by reading them. The names
+ * of the artifacts that were written are listed in a second file, so that
+ * later steps can limit themselves to those. Artifacts can be written from
+ * multiple threads.
+ *
+ * @author hylke
+ */
+public class ArtifactWriter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArtifactWriter.class.getName());
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path baseDir;
+    private final Path manifestFile;
+    private final Path changedFile;
+    private final Map<String, String> manifest = new TreeMap<>();
+    private final List<String> changed = new ArrayList<>();
+    private int unchanged;
+
+    /**
+     * Creates a writer for artifacts with the given prefix. The manifest is
+     * stored next to the artifacts as [prefix].sha256, the list of changed
+     * artifacts as [prefix]_changed.txt.
+     *
+     * @param prefix The path prefix of the artifacts.
+     * @throws IOException If an existing manifest could not be read.
+     */
+    public ArtifactWriter(String prefix) throws IOException {
+        manifestFile = new File(prefix + ".sha256").getAbsoluteFile().toPath();
+        changedFile = new File(prefix + "_changed.txt").getAbsoluteFile().toPath();
+        baseDir = manifestFile.getParent();
+        readManifest();
+    }
+
+    private void readManifest() throws IOException {
+        if (!Files.isRegularFile(manifestFile)) {
+            return;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int split = line.indexOf("  ");
+                if (split > 0) {
+                    manifest.put(line.substring(split + 2), line.substring(0, split));
+                }
+            }
+        }
+    }
+
+    /**
+     * Produces the content of an artifact.
+     */
+    @FunctionalInterface
+    public static interface Emitter {
+
+        /**
+         * Writes the content of the artifact to the given writer.
+         *
+         * @param out The writer to write to, does not need to be closed.
+         * @throws IOException If writing fails.
+         */
+        public void emit(Writer out) throws IOException;
+    }
+
+    /**
+     * Writes the given content to the given file, unless the file already has
+     * exactly this content.
+     *
+     * @param file The file to write.
+     * @param content The content to write, encoded as UTF-8.
+     * @return true if the file was written.
+     * @throws IOException If writing fails.
+     */
+    public boolean write(File file, CharSequence content) throws IOException {
+        return write(file, out -> out.append(content));
+    }
+
+    /**
+     * Streams the content produced by the given emitter to a temporary file
+     * next to the given file, hashing it on the way. If the file already has
+     * exactly this content, the temporary file is dropped, otherwise it
+     * replaces the file. The content is never held in memory as a whole.
+     *
+     * @param file The file to write.
+     * @param emitter The emitter producing the content, encoded as UTF-8.
+     * @return true if the file was written.
+     * @throws IOException If writing fails.
+     */
+    public boolean write(File file, Emitter emitter) throws IOException {
+        Target target = new Target(file);
+        try {
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(target.stream, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                emitter.emit(out);
+            }
+            return target.finish();
+        } finally {
+            target.discard();
+        }
+    }
+
+    /**
+     * Streams the content produced by the given emitter to the given file, and
+     * at the same time gzip compressed to a second file, for serving
+     * precompressed. The content is produced only once. The gzip file is
+     * compared on its compressed bytes, which are the same for the same
+     * content, since the gzip header carries no timestamp.
+     *
+     * @param file The file to write.
+     * @param gzipFile The compressed file to write, usually ending in .gz.
+     * @param emitter The emitter producing the content, encoded as UTF-8.
+     * @return true if either file was written.
+     * @throws IOException If writing fails.
+     */
+    public boolean writeWithGzip(File file, File gzipFile, Emitter emitter) throws IOException {
+        Target plain = new Target(file);
+        try {
+            Target compressed = new Target(gzipFile);
+            try {
+                OutputStream tee = new TeeOutputStream(plain.stream, new BestGzipOutputStream(compressed.stream));
+                try (Writer out = new BufferedWriter(new OutputStreamWriter(tee, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                    emitter.emit(out);
+                }
+                boolean written = plain.finish();
+                return compressed.finish() || written;
+            } finally {
+                compressed.discard();
+            }
+        } finally {
+            plain.discard();
+        }
+    }
+
+    /**
+     * One artifact being written: a temporary file next to the artifact, and
+     * the hash and size of what was written to it.
+     */
+    private final class Target {
+
+        private final Path path;
+        private final Path temp;
+        private final ArtifactEvent event = new ArtifactEvent();
+        private final MessageDigest digest = Utils.newSha256();
+        private final CountingOutputStream counter;
+        private final OutputStream stream;
+
+        private Target(File file) throws IOException {
+            path = file.getAbsoluteFile().toPath();
+            event.begin();
+            Files.createDirectories(path.getParent());
+            temp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+            counter = new CountingOutputStream(Files.newOutputStream(temp));
+            stream = new DigestOutputStream(counter, digest);
+        }
+
+        /**
+         * Replaces the artifact with the temporary file, unless the artifact
+         * already has exactly this content. The stream must be closed.
+         *
+         * @return true if the artifact was written.
+         */
+        private boolean finish() throws IOException {
+            String hash = Utils.toHex(digest.digest());
+            String name = nameOf(path);
+            String known;
+            synchronized (ArtifactWriter.this) {
+                known = manifest.get(name);
+            }
+            if (hash.equals(existingHash(path, known, counter.getByteCount()))) {
+                synchronized (ArtifactWriter.this) {
+                    manifest.put(name, hash);
+                    unchanged++;
+                }
+                commit(event, name, counter.getByteCount(), false);
+                return false;
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            synchronized (ArtifactWriter.this) {
+                manifest.put(name, hash);
+                changed.add(name);
+            }
+            commit(event, name, counter.getByteCount(), true);
+            return true;
+        }
+
+        private void discard() throws IOException {
+            stream.close();
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static void commit(ArtifactEvent event, String name, long bytes, boolean written) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = name;
+            event.bytes = bytes;
+            event.written = written;
+            event.commit();
+        }
+    }
+
+    /**
+     * Gzip with the best compression, since the files are compressed once and
+     * served many times.
+     */
+    private static class BestGzipOutputStream extends GZIPOutputStream {
+
+        BestGzipOutputStream(OutputStream out) throws IOException {
+            super(out, BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+
+    /**
+     * Removes the given file from the manifest, after it has been deleted.
+     *
+     * @param file The file that was removed.
+     */
+    public synchronized void forget(File file) {
+        manifest.remove(nameOf(file.getAbsoluteFile().toPath()));
+    }
+
+    private static String existingHash(Path path, String known, long size) throws IOException {
+        if (!Files.isRegularFile(path) || Files.size(path) != size) {
+            return null;
+        }
+        if (known != null) {
+            return known;
+        }
+        MessageDigest digest = Utils.newSha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    private String nameOf(Path path) {
+        if (path.startsWith(baseDir)) {
+            return baseDir.relativize(path).toString();
+        }
+        return path.toString();
+    }
+
+    /**
+     * @return The names of the artifacts written so far, relative to the
+     * directory of the manifest.
+     */
+    public synchronized List<String> getChanged() {
+        return Collections.unmodifiableList(new ArrayList<>(changed));
+    }
+
+    /**
+     * @return The number of artifacts that were not written, because their
+     * content did not change.
+     */
+    public synchronized int getUnchangedCount() {
+        return unchanged;
+    }
+
+    /**
+     * Writes the manifest and the list of changed artifacts.
+     *
+     * @throws IOException If writing fails.
+     */
+    public synchronized void finish() throws IOException {
+        Files.createDirectories(baseDir);
+        try (Writer writer = Files.newBufferedWriter(manifestFile, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, String> entry : manifest.entrySet()) {
+                writer.append(entry.getValue()).append("  ").append(entry.getKey()).append('\n');
+            }
+        }
+        // Artifacts are written in parallel, sort them for a stable list.
+        Collections.sort(changed);
+        try (Writer writer = Files.newBufferedWriter(changedFile, StandardCharsets.UTF_8)) {
+            for (String name : changed) {
+                writer.append(name).append('\n');
+            }
+        }
+        LOGGER.info("Wrote {} artifacts, {} unchanged.", changed.size(), unchanged);
+    }
+}
@@ -0,0 +1,167 @@
+package hylke.dotgen;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import hylke.dotgen.model.GraphStore;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the Generators for many configuration files on a bounded pool of
+ * threads in one JVM. Each worker thread keeps its cleaner and XML parsers
+ * between jobs.
+ *
+ * The processors are shared between the jobs that run at the same time: the
+ * pools each job uses for parsing, generating and rendering are limited to
+ * their share, so the total number of busy threads stays close to the number
+ * of processors.
+ *
+ * @author hylke
+ */
+public class BatchRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BatchRunner.class.getName());
+
+    /**
+     * The outcome of a single job.
+     */
+    public static class JobResult {
+
+        public final File config;
+        public long millis;
+        public int requirementClasses;
+        public int requirements;
+        public Exception failure;
+
+        public JobResult(File config) {
+            this.config = config;
+        }
+
+        public boolean isSuccess() {
+            return failure == null;
+        }
+    }
+
+    private final int threads;
+
+    /**
+     * @param threads The maximum number of jobs to run at the same time, 0 for
+     * one per processor.
+     */
+    public BatchRunner(int threads) {
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Collects the configuration files from the given paths. Directories are
+     * searched, non-recursively, for json files.
+     *
+     * @param paths The files and directories.
+     * @return The configuration files, in the order given, directory content
+     * sorted by name.
+     * @throws IOException If a path does not exist.
+     */
+    public static List<File> collectConfigs(List<String> paths) throws IOException {
+        List<File> configs = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                File[] found = file.listFiles((dir, name) -> name.toLowerCase().endsWith(".json"));
+                if (found != null) {
+                    Arrays.sort(found);
+                    configs.addAll(Arrays.asList(found));
+                }
+            } else if (file.isFile()) {
+                configs.add(file);
+            } else {
+                throw new IOException("No such file or directory: " + path);
+            }
+        }
+        return configs;
+    }
+
+    /**
+     * Runs all given jobs and waits for them to finish.
+     *
+     * @param configs The configuration files of the jobs.
+     * @return The results, in the order of the given configuration files.
+     * @throws InterruptedException If interrupted while waiting for the jobs.
+     */
+    public List<JobResult> run(List<File> configs) throws InterruptedException {
+        int poolSize = Math.max(1, Math.min(threads, configs.size()));
+        int jobThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / poolSize);
+        LOGGER.info("Running {} jobs on {} threads, {} threads per job", configs.size(), poolSize, jobThreads);
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, new NamedThreadFactory("batch-"));
+        try {
+            List<Callable<JobResult>> jobs = new ArrayList<>();
+            for (File config : configs) {
+                jobs.add(() -> runJob(config, jobThreads));
+            }
+            List<JobResult> results = new ArrayList<>();
+            for (Future<JobResult> future : pool.invokeAll(jobs)) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException ex) {
+                    throw new IllegalStateException("Job failed outside of its own error handling", ex.getCause());
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private JobResult runJob(File config, int jobThreads) {
+        JobResult result = new JobResult(config);
+        long start = System.nanoTime();
+        try {
+            LOGGER.info("Starting job {}", config);
+            JsonElement json = JsonParser.parseString(FileUtils.readFileToString(config, "UTF-8"));
+            Generator gen = new Generator();
+            gen.configure(json, null, null, null);
+            gen.setMaxThreads(jobThreads);
+            gen.process();
+            GraphStore store = gen.getGraphStore();
+            result.requirementClasses = store.getClassCount();
+            result.requirements = store.getRequirementCount();
+        } catch (Exception ex) {
+            LOGGER.error("Job {} failed", config, ex);
+            result.failure = ex;
+        }
+        result.millis = (System.nanoTime() - start) / 1_000_000;
+        return result;
+    }
+
+    /**
+     * Logs a one-line summary per job.
+     *
+     * @param results The results to summarise.
+     * @return The number of failed jobs.
+     */
+    public static int logSummary(List<JobResult> results) {
+        int failed = 0;
+        LOGGER.info("Batch summary:");
+        for (JobResult result : results) {
+            if (result.isSuccess()) {
+                LOGGER.info("  OK     {} ms  {}  ({} classes, {} requirements)", result.millis, result.config, result.requirementClasses, result.requirements);
+            } else {
+                failed++;
+                LOGGER.info("  FAILED {} ms  {}  ({})", result.millis, result.config, result.failure.toString());
+            }
+        }
+        LOGGER.info("{} jobs, {} failed", results.size(), failed);
+        return failed;
+    }
+
+}
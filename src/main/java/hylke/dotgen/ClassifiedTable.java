@@ -0,0 +1,27 @@
+package hylke.dotgen;
+
+import hylke.dotgen.html.HtmlTable;
+
+/**
+ * A table, with the type it was classified as.
+ *
+ * @author hylke
+ */
+public class ClassifiedTable {
+
+    public final int index;
+    public final HtmlTable table;
+    public final TableType type;
+    /**
+     * The cleaned content of the first cell, that the type was derived from.
+     */
+    public final String label;
+
+    public ClassifiedTable(int index, HtmlTable table, TableType type, String label) {
+        this.index = index;
+        this.table = table;
+        this.type = type;
+        this.label = label;
+    }
+
+}
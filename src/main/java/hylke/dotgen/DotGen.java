@@ -3,8 +3,14 @@ package hylke.dotgen;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
 import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import hylke.dotgen.jfr.FlightRecording;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
 import org.apache.commons.io.FileUtils;
@@ -20,7 +26,35 @@ public class DotGen {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(DotGen.class.getName());
 
-    public static void main(String[] args) throws ConfigurationException, IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+    public static void main(String[] args) throws ConfigurationException, IOException, SAXException, ParserConfigurationException, XPathExpressionException, InterruptedException {
+        if (args.length >= 2 && "--jfr".equals(args[0])) {
+            FlightRecording recording = FlightRecording.start(Paths.get(args[1]));
+            try {
+                main(Arrays.copyOfRange(args, 2, args.length));
+            } finally {
+                recording.close();
+            }
+            return;
+        }
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            int status = runBatch(Arrays.asList(args).subList(1, args.length));
+            if (status != 0) {
+                System.exit(status);
+            }
+            return;
+        }
+        if (args.length > 0 && "--synth".equals(args[0])) {
+            SpecGenerator.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            runServer(Arrays.asList(args).subList(1, args.length));
+            return;
+        }
+        if (args.length == 2 && "--watch".equals(args[0])) {
+            new SourceWatcher(new File(args[1])).run();
+            return;
+        }
 
         switch (args.length) {
             case 0:
@@ -42,8 +76,80 @@ public class DotGen {
             default: {
                 LOGGER.warn("Usage: DotGen [configfile]");
                 LOGGER.warn("Usage: DotGen [source] [target]");
+                LOGGER.warn("Usage: DotGen --batch [--threads n] [configfile|configdir]...");
+                LOGGER.warn("Usage: DotGen --watch [configfile]");
+                LOGGER.warn("Usage: DotGen --serve [--host h] [--port n] [--threads n] [--queue n] [configfile]");
+                LOGGER.warn("Usage: DotGen --synth [options] [output.html]");
+                LOGGER.warn("Any of these can be preceded by --jfr [file.jfr] to make a flight recording of the run.");
             }
         }
     }
 
+    /**
+     * Serves the model described by the arguments, and only returns when the
+     * JVM shuts down, so that a flight recording covers the serving.
+     */
+    private static void runServer(List<String> args) throws ConfigurationException, IOException, SAXException, ParserConfigurationException, XPathExpressionException, InterruptedException {
+        String host = "localhost";
+        int port = 8080;
+        int threads = 0;
+        int queue = 64;
+        String configFile = null;
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if ("--host".equals(arg) && i + 1 < args.size()) {
+                host = args.get(++i);
+            } else if ("--port".equals(arg) && i + 1 < args.size()) {
+                port = Integer.parseInt(args.get(++i));
+            } else if ("--threads".equals(arg) && i + 1 < args.size()) {
+                threads = Integer.parseInt(args.get(++i));
+            } else if ("--queue".equals(arg) && i + 1 < args.size()) {
+                queue = Integer.parseInt(args.get(++i));
+            } else {
+                configFile = arg;
+            }
+        }
+        if (configFile == null) {
+            LOGGER.warn("Usage: DotGen --serve [--host h] [--port n] [--threads n] [--queue n] [configfile]");
+            return;
+        }
+        String config = FileUtils.readFileToString(new File(configFile), "UTF-8");
+        Generator gen = new Generator();
+        gen.configure(JsonParser.parseString(config), null, null, null);
+        gen.loadModel();
+        ModelServer server = new ModelServer(gen, host, port, threads, queue);
+        server.start();
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            stopped.countDown();
+        }, "serve-shutdown"));
+        stopped.await();
+    }
+
+    /**
+     * Runs the batch described by the arguments.
+     *
+     * @return The exit status, 1 if one or more jobs failed.
+     */
+    private static int runBatch(List<String> args) throws IOException, InterruptedException {
+        int threads = 0;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.size(); i++) {
+            String arg = args.get(i);
+            if ("--threads".equals(arg) && i + 1 < args.size()) {
+                threads = Integer.parseInt(args.get(++i));
+            } else {
+                paths.add(arg);
+            }
+        }
+        if (paths.isEmpty()) {
+            LOGGER.warn("Usage: DotGen --batch [--threads n] [configfile|configdir]...");
+            return 0;
+        }
+        BatchRunner runner = new BatchRunner(threads);
+        List<BatchRunner.JobResult> results = runner.run(BatchRunner.collectConfigs(paths));
+        return BatchRunner.logSummary(results) > 0 ? 1 : 0;
+    }
+
 }
@@ -1,24 +1,42 @@
 package hylke.dotgen;
 
+import com.google.gson.JsonElement;
 import de.fraunhofer.iosb.ilt.configurable.AnnotatedConfigurable;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableClass;
 import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorList;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
 import de.fraunhofer.iosb.ilt.configurable.editor.EditorSubclass;
+import hylke.dotgen.layout.Graph;
+import hylke.dotgen.layout.Graph.Shape;
+import hylke.dotgen.layout.Graph.Style;
+import hylke.dotgen.layout.LayeredLayout;
+import hylke.dotgen.layout.SvgRenderer;
+import hylke.dotgen.model.ClosureIndex;
 import hylke.dotgen.model.Data;
-import hylke.dotgen.model.ConformanceClass;
-import hylke.dotgen.model.Recommendation;
-import hylke.dotgen.model.Requerement;
-import hylke.dotgen.model.RequerementClass;
+import hylke.dotgen.model.DataFingerprint;
+import hylke.dotgen.model.GraphStore;
+import hylke.dotgen.model.GraphStore.IdList;
 import hylke.dotgen.model.Image;
+import hylke.dotgen.rdf.RdfFormat;
+import hylke.dotgen.rdf.RdfWriter;
 import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Objects;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -33,6 +51,47 @@ public class Generator implements AnnotatedConfigurable<Void, Void> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Generator.class.getName());
 
+    private static final String ADMS = "http://www.w3.org/ns/adms#";
+    private static final String DCAT = "http://www.w3.org/ns/dcat#";
+    private static final String DCTERMS = "http://purl.org/dc/terms/";
+    private static final String NA = "http://www.opengis.net/def/metamodel/ogc-na/";
+    private static final String OGCDT = "http://www.opengis.net/def/doc-type/";
+    private static final String OWL = "http://www.w3.org/2002/07/owl#";
+    private static final String REG = "http://purl.org/linked-data/registry#";
+    private static final String SKOS = "http://www.w3.org/2004/02/skos/core#";
+    private static final String SPEC = "http://www.opengis.net/def/ont/modspec/";
+    private static final String SPECREL = "http://www.opengis.net/def/ont/specrel/";
+    private static final String XSD = "http://www.w3.org/2001/XMLSchema#";
+    private static final String XSD_DATE = XSD + "date";
+    private static final Map<String, String> RDF_PREFIXES = new LinkedHashMap<>();
+    /**
+     * The top concepts of 20-082r2, used when no top concepts are configured.
+     */
+    private static final List<String> DEFAULT_TOP_CONCEPTS = Arrays.asList(
+            "/conf/obs-cpt",
+            "/conf/obs-core",
+            "/conf/obs-basic",
+            "/conf/obs-cpt/Observation",
+            "/conf/obs-core/AbstractObservationCharacteristics",
+            "/conf/obs-core/AbstractObservation",
+            "/conf/obs-basic/ObservationCharacteristics",
+            "/conf/obs-basic/Observation",
+            "/conf/obs-basic/ObservingCapability");
+
+    static {
+        RDF_PREFIXES.put(ADMS, "adms");
+        RDF_PREFIXES.put(DCAT, "dcat");
+        RDF_PREFIXES.put(DCTERMS, "dcterms");
+        RDF_PREFIXES.put(NA, "na");
+        RDF_PREFIXES.put(OGCDT, "ogcdt");
+        RDF_PREFIXES.put(OWL, "owl");
+        RDF_PREFIXES.put(REG, "reg");
+        RDF_PREFIXES.put(SKOS, "skos");
+        RDF_PREFIXES.put(SPEC, "spec");
+        RDF_PREFIXES.put(SPECREL, "specrel");
+        RDF_PREFIXES.put(XSD, "xsd");
+    }
+
     @ConfigurableField(editor = EditorString.class,
             label = "Date Modified", description = "The date the doc was last modified")
     @EditorString.EdOptsString(dflt = "1990-01-01")
@@ -68,6 +127,52 @@ public class Generator implements AnnotatedConfigurable<Void, Void> {
     @EditorString.EdOptsString(dflt = "http://www.opengis.net/spec/OMS/3.0")
     private String identifierSpec;
 
+    @ConfigurableField(editor = EditorString.class,
+            label = "Doc Number", description = "The OGC document number, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "20-082r2")
+    private String docNumber;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Doc Title", description = "The title of the document, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "OGC® Abstract Specification Topic 20 - Observations and measurements")
+    private String docTitle;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Doc Creator", description = "The editor of the document, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "Kathi Schleidt")
+    private String docCreator;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Doc Version", description = "The version of the specification, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "3.0")
+    private String docVersion;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Doc Type", description = "The OGC document type, like is or ip, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "ip")
+    private String docType;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Landing Page", description = "The url of the published document, used in the RDF metadata.")
+    @EditorString.EdOptsString(dflt = "http://docs.opengeospatial.org/is/20-082r2/20-082r2.html")
+    private String landingPage;
+
+    @ConfigurableField(editor = EditorString.class,
+            label = "Scheme Label", description = "The label of the SKOS concept scheme of the specification.")
+    @EditorString.EdOptsString(dflt = "Specification elements for OGC 20-082r2 Observations, Measurements and Samples")
+    private String schemeLabel;
+
+    @ConfigurableField(editor = EditorList.class, optional = true,
+            label = "Top Concepts", description = "The definitions of the top concepts of the concept scheme. If empty, the top concepts of 20-082r2 are used.")
+    @EditorList.EdOptsList(editor = EditorString.class)
+    @EditorString.EdOptsString()
+    private List<String> topConcepts;
+
+    @ConfigurableField(editor = EditorBoolean.class, optional = true,
+            label = "Write N-Triples", description = "Also write the RDF as N-Triples, to [target].nt, for bulk loading.")
+    @EditorBoolean.EdOptsBool()
+    private boolean writeNTriples;
+
     @ConfigurableField(editor = EditorString.class,
             label = "Source", description = "The source file to parse.")
     @EditorString.EdOptsString(dflt = "../20-082r2.html")
@@ -83,7 +188,58 @@ public class Generator implements AnnotatedConfigurable<Void, Void> {
     @EditorSubclass.EdOptsSubclass(iface = Parser.class)
     private Parser parser;
 
-    private Data documentData;
+    @ConfigurableField(editor = EditorString.class, optional = true,
+            label = "Snapshot Cache", description = "Directory to store parse snapshots in. When the source and parser configuration did not change, the snapshot is loaded instead of parsing the source again. If empty, no snapshots are used.")
+    @EditorString.EdOptsString()
+    private String snapshotCache;
+
+    @ConfigurableField(editor = EditorInt.class, optional = true,
+            label = "Generate Threads", description = "The number of threads used to generate artifacts, 0 for one per processor.")
+    @EditorInt.EdOptsInt(dflt = 0, min = 0, max = 1024, step = 1)
+    private int generateThreads;
+
+    @ConfigurableField(editor = EditorBoolean.class, optional = true,
+            label = "Render SVG", description = "Lay out and render each graph to svg/[name].svg next to the dot files, without Graphviz.")
+    @EditorBoolean.EdOptsBool()
+    private boolean renderSvg;
+
+    @ConfigurableField(editor = EditorInt.class, optional = true,
+            label = "Render Threads", description = "The number of threads used to render graphs, 0 for one per processor.")
+    @EditorInt.EdOptsInt(dflt = 0, min = 0, max = 1024, step = 1)
+    private int renderThreads;
+
+    private GraphStore store;
+    private ClosureIndex closure;
+    private DataFingerprint fingerprint;
+    private ArtifactWriter artifacts;
+    private RunMetrics metrics = new RunMetrics();
+    private boolean mapSource = true;
+    /**
+     * The maximum number of threads per pool, 0 for no limit.
+     */
+    private int maxThreads;
+    private final List<RenderJob> pendingRenders = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * A graph that still needs to be laid out and rendered.
+     */
+    private static class RenderJob {
+
+        final File file;
+        final Graph graph;
+        final String title;
+
+        RenderJob(File file, Graph graph, String title) {
+            this.file = file;
+            this.graph = graph;
+            this.title = title;
+        }
+    }
+
+    /**
+     * The json configuration of the parser, part of the snapshot key.
+     */
+    private String parserConfig;
 
     public Generator() {
     }
@@ -93,167 +249,435 @@ public class Generator implements AnnotatedConfigurable<Void, Void> {
         this.target = target;
     }
 
+    @Override
+    public void configure(JsonElement config, Void context, Void edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
+        AnnotatedConfigurable.super.configure(config, context, edtCtx, configEditor);
+        JsonElement parserJson = config != null && config.isJsonObject() ? config.getAsJsonObject().get("parser") : null;
+        parserConfig = parserJson == null ? null : parserJson.toString();
+    }
+
+    public File getSourceFile() {
+        return new File(source);
+    }
+
     public void process() throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
         LOGGER.info("Working on: {}", source);
         LOGGER.info(" Output to: {}", target);
-        File sourceFile = new File(source);
+        startRun();
+        load();
+        generate(fingerprint.changesSince(null));
+        writeReport();
+
+        LOGGER.info("Found {} RequirementClasses.", store.getClassCount());
+        LOGGER.info("Found {} Requirements.", store.getRequirementCount());
+
+    }
+
+    /**
+     * Parses the source, or loads its snapshot, without generating anything,
+     * for serving the model from memory.
+     *
+     * @throws IOException If reading fails.
+     * @throws SAXException If the source could not be parsed.
+     * @throws ParserConfigurationException If the parser is misconfigured.
+     * @throws XPathExpressionException If the parser is misconfigured.
+     */
+    public void loadModel() throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+        LOGGER.info("Loading: {}", source);
+        startRun();
+        load();
+        LOGGER.info("Found {} RequirementClasses.", store.getClassCount());
+        LOGGER.info("Found {} Requirements.", store.getRequirementCount());
+    }
+
+    /**
+     * Parses the source again, and only regenerates the artifacts that are
+     * affected by the changes since the previous parse.
+     *
+     * @return The number of artifacts that were written.
+     * @throws IOException If reading or writing fails.
+     * @throws SAXException If the source could not be parsed.
+     * @throws ParserConfigurationException If the parser is misconfigured.
+     * @throws XPathExpressionException If the parser is misconfigured.
+     */
+    public int update() throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+        if (fingerprint == null) {
+            process();
+            return -1;
+        }
+        parser.reset();
+        startRun();
+        DataFingerprint previous = load();
+        int count = generate(fingerprint.changesSince(previous));
+        writeReport();
+        return count;
+    }
+
+    private void startRun() {
+        metrics = new RunMetrics();
+        parser.setMetrics(metrics);
+        parser.setMapSource(mapSource);
+        parser.setMaxThreads(maxThreads);
+    }
+
+    /**
+     * Limits the number of threads of each pool used by this generator,
+     * overriding the configured thread counts, for instance when many
+     * generators run at the same time.
+     *
+     * @param maxThreads The maximum number of threads, 0 for no limit.
+     * @return this.
+     */
+    public Generator setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    /**
+     * @param configured The configured number of threads, 0 for one per
+     * processor.
+     * @return The number of threads to use, within the limit.
+     */
+    private int threads(int configured) {
+        int threads = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+        return maxThreads > 0 ? Math.min(threads, maxThreads) : threads;
+    }
+
+    /**
+     * Sets whether the source may be memory-mapped, see
+     * {@link Parser#setMapSource(boolean)}.
+     *
+     * @param mapSource false to read the source into the heap.
+     * @return this.
+     */
+    public Generator setMapSource(boolean mapSource) {
+        this.mapSource = mapSource;
+        return this;
+    }
+
+    /**
+     * Writes the metrics of the last run to [target]_metrics.json.
+     */
+    private void writeReport() throws IOException {
+        Map<String, String> extra = new LinkedHashMap<>();
+        extra.put("source", source);
+        extra.put("target", target);
+        metrics.write(new File(target + "_metrics.json"), extra);
+    }
+
+    /**
+     * @return The metrics of the last run.
+     */
+    public RunMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Parses the source, or loads its snapshot, and builds the indexes used for
+     * generating. Only the GraphStore is kept, the parsed Data is released.
+     *
+     * @return The fingerprint of the previously loaded data, or null.
+     */
+    @SuppressWarnings("try")
+    DataFingerprint load() throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+        Data data;
+        try (RunMetrics.Phase phase = metrics.start("load")) {
+            data = loadOrParse(new File(source));
+        }
+        DataFingerprint previous = fingerprint;
+        try (RunMetrics.Phase phase = metrics.start("index")) {
+            store = new GraphStore(data);
+            closure = new ClosureIndex(store);
+            fingerprint = new DataFingerprint(data, closure);
+        }
+        parser.reset();
+        metrics.count("textEntries", store.getText().size());
+        metrics.count("textBytes", store.getText().getByteSize());
+        return previous;
+    }
+
+    GraphStore getGraphStore() {
+        return store;
+    }
+
+    ClosureIndex getClosureIndex() {
+        return closure;
+    }
 
-        documentData = parser
-                .parseSource(sourceFile)
-                .getDocumentData();
+    /**
+     * Generates the artifacts affected by the given changes. The artifacts only
+     * read the GraphStore, so they are generated in parallel.
+     *
+     * @param changes The changes to generate the artifacts for.
+     * @return The number of artifacts that were generated.
+     */
+    @SuppressWarnings("try")
+    private int generate(DataFingerprint.Changes changes) throws IOException {
+        artifacts = new ArtifactWriter(target);
+        for (String removed : changes.getRemovedClasses()) {
+            File stale = classDotFile(removed);
+            if (stale.delete()) {
+                LOGGER.info("Removed {}", stale);
+            }
+            artifacts.forget(stale);
+        }
 
+        List<TaskRunner.Task> tasks = new ArrayList<>();
+        boolean classesChanged = changes.isClassesChanged();
+        boolean nodesChanged = classesChanged || changes.isNodesChanged();
         for (Image image : Image.values()) {
-            generateDot(image);
-        }
-        generateDot(null);
-
-        for (RequerementClass reqClass : documentData.getRequirementClasses().values()) {
-            File targetFileFull = new File(target + "_" + StringUtils.replace(reqClass.definition, "/", "_") + ".dot");
-            generateDotFromClass(reqClass, targetFileFull);
-        }
-
-        generateReqHtml(new File(target + "_requirements.html"));
-        generateTtl(new File(target + ".ttl"));
-        LOGGER.info("Found {} RequirementClasses.", documentData.getRequirementClasses().size());
-        LOGGER.info("Found {} Requirements.", documentData.getRequirements().size());
-
-    }
-
-    private void generateTtl(File targetFile) throws IOException {
-        StringBuilder sb = new StringBuilder("@prefix adms: <http://www.w3.org/ns/adms#> .\n")
-                .append("@prefix dcat: <http://www.w3.org/ns/dcat#> .\n")
-                .append("@prefix dct: <http://purl.org/dc/terms/> .\n")
-                .append("@prefix na: <http://www.opengis.net/def/metamodel/ogc-na/> .\n")
-                .append("@prefix ogcdt: <http://www.opengis.net/def/doc-type/> .\n")
-                .append("@prefix owl: <http://www.w3.org/2002/07/owl#> .\n")
-                .append("@prefix reg: <http://purl.org/linked-data/registry#> .\n")
-                .append("@prefix skos: <http://www.w3.org/2004/02/skos/core#> .\n")
-                .append("@prefix spec: <http://www.opengis.net/def/ont/modspec/> .\n")
-                .append("@prefix specrel: <http://www.opengis.net/def/ont/specrel/> .\n")
-                .append("@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n")
-                .append("@prefix dcterms: <http://purl.org/dc/terms/> .\n")
-                .append("\n")
-                .append("<http://www.opengis.net/spec/docs/20-082r2-anno> a owl:Ontology .\n")
-                .append("\n")
-                .append("\n")
-                .append("\n")
-                .append("<http://www.opengis.net/def/docs/20-082r2> a spec:Specification ;\n")
-                .append("    dcterms:creator \"Kathi Schleidt\" ;\n")
-                .append("    dcterms:dateAccepted \"").append(dateAccepted).append("\"^^xsd:date ;\n")
-                .append("    dcterms:dateSubmitted \"").append(dateSubmitted).append("\"^^xsd:date ;\n")
-                .append("    dcterms:identifier \"").append(identifierDoc).append("\" ;\n")
-                .append("    reg:status reg:statusValid ;\n")
-                .append("    na:doctype ogcdt:ip ;\n")
-                .append("    spec:authority \"Open Geospatial Consortium\" ;\n");
-        boolean first = true;
-        for (ConformanceClass confClass : documentData.getConformanceClasses().values()) {
-            if (first) {
-                first = false;
-                sb.append("    spec:class ");
-            } else {
-                sb.append(",\n		");
+            addDotTasks(tasks, image, nodesChanged, classesChanged);
+        }
+        addDotTasks(tasks, null, nodesChanged, classesChanged);
+
+        for (int classId = 0; classId < store.getClassCount(); classId++) {
+            if (changes.affects(classId)) {
+                final int id = classId;
+                tasks.add(measured("generate.classDot", () -> generateDotFromClass(id, classDotFile(store.getClassDefinition(id).toString()))));
             }
-            sb.append("<").append(identifierSpec).append(confClass.definition).append(">");
-        }
-        sb.append(" ;\n")
-                .append("    spec:date \"").append(dateApproved).append("\"^^xsd:date ;\n")
-                .append("    specrel:implementation <http://www.opengis.net/def/docs/20-082r2> ;\n")
-                .append("    skos:notation \"20-082r2\"^^na:doc_no ;\n")
-                .append("    skos:prefLabel \"OGC® Abstract Specification Topic 20 - Observations and measurements\" ;\n")
-                .append("    adms:version \"3.0\" ;\n")
-                .append("    dcat:landingPage <http://docs.opengeospatial.org/is/20-082r2/20-082r2.html> .");
-
-        sb.append("\n\n");
-
-        // Conformance Tests
-        for (Requerement req : documentData.getRequirements().values()) {
-            String confTestDef = req.definition.replace("/req/", "/conf/");
-            sb.append("<").append(identifierSpec).append(confTestDef).append("> a spec:ConformanceTest,\n")
-                    .append("        skos:Concept ;\n")
-                    .append("    spec:method \"Inspect the documentation of the application, schema or profile.\" ;\n")
-                    .append("    spec:purpose \"Verify that all requirements from the requirements class have been fulfilled.\" ;\n")
-                    .append("    spec:requirement <").append(identifierSpec).append(req.definition).append("> ;\n")
-                    .append("    spec:testType spec:Capabilities ;\n");
-            for (RequerementClass reqClass : req.inClass) {
-                sb.append("    skos:broader <").append(identifierSpec)
-                        .append(reqClass.definition.replace("/req/", "/conf/"))
-                        .append("> ;\n");
+        }
+
+        if (changes.isContentChanged()) {
+            tasks.add(measured("generate.requirementsHtml", () -> generateReqHtml(new File(target + "_requirements.html"))));
+            tasks.add(measured("generate.ttl", () -> generateRdf(new File(target + ".ttl"), RdfFormat.TURTLE)));
+            File jsonFile = new File(target + "_model.json");
+            tasks.add(measured("generate.json", () -> artifacts.writeWithGzip(jsonFile, new File(jsonFile.getPath() + ".gz"), this::emitModelJson)));
+            if (writeNTriples) {
+                tasks.add(measured("generate.nt", () -> generateRdf(new File(target + ".nt"), RdfFormat.NTRIPLES)));
             }
-            //                    .append("    skos:broader <").append(identifierSpec).append("/conf/obs-cpt/Observation> ;\n")
-            //                    .append("    skos:broader <").append(identifierSpec).append("/conf/obs-core/AbstractObservation> ;\n")
-            sb.append("    skos:definition \"Verify that all requirements from the requirements class have been fulfilled.\" ;\n")
-                    .append("    skos:inScheme <").append(identifierSpec).append("> ;\n")
-                    .append("    skos:prefLabel \"Conformance Test ").append(identifierSpec).append(req.definition).append("\" .")
-                    .append("\n\n");
-        }
-        sb.append("\n\n\n");
-
-        // RequirementClasses
-        for (RequerementClass reqClass : documentData.getRequirementClasses().values()) {
-            sb.append("<").append(identifierSpec).append(reqClass.definition).append("> a spec:RequirementClass,\n")
-                    .append("        skos:Concept ;\n");
-            for (Requerement req : reqClass.requirements) {
-                sb.append("    spec:normativeStatement <").append(identifierSpec).append(req.definition).append("> ;\n");
+        }
+        try {
+            try (RunMetrics.Phase phase = metrics.start("generate")) {
+                new TaskRunner("generate", threads(generateThreads)).run(tasks);
             }
-            for (RequerementClass imprt : reqClass.imports) {
-                sb.append("    skos:broader <").append(identifierSpec).append(imprt.definition).append("> ;\n");
+            try (RunMetrics.Phase phase = metrics.start("render")) {
+                renderPending();
             }
-            sb.append("    skos:definition \"").append(reqClass.definition).append("\" ;\n")
-                    .append("    skos:inScheme <").append(identifierSpec).append("> ;\n")
-                    .append("    skos:prefLabel \"Requirement Class ").append(reqClass.definition).append("\" .")
-                    .append("\n\n");
-        }
-        sb.append("\n\n\n");
-
-        // Requirements
-        for (Requerement req : documentData.getRequirements().values()) {
-            sb.append("<").append(identifierSpec).append(req.definition).append("> a spec:Requirement,\n")
-                    .append("        skos:Concept ;\n")
-                    .append("    dcterms:description \"").append(req.description.replaceAll("[\"]", "\\\"")).append("\" ;\n");
-            for (RequerementClass reqClass : req.inClass) {
-                sb.append("    skos:broader <").append(identifierSpec).append(reqClass.definition).append("> ;\n");
+        } finally {
+            pendingRenders.clear();
+            artifacts.finish();
+        }
+        metrics.count("artifacts.tasks", tasks.size());
+        metrics.count("artifacts.written", artifacts.getChanged().size());
+        metrics.count("artifacts.unchanged", artifacts.getUnchangedCount());
+        return tasks.size();
+    }
+
+    /**
+     * Wraps the given task so that its runs are recorded as the given phase.
+     */
+    @SuppressWarnings("try")
+    private TaskRunner.Task measured(String name, TaskRunner.Task task) {
+        return () -> {
+            try (RunMetrics.Phase phase = metrics.start(name)) {
+                task.run();
             }
-            sb.append("    skos:definition \"").append(req.description).append("\" ;\n")
-                    .append("    skos:inScheme <").append(identifierSpec).append("> ;\n")
-                    .append("    skos:prefLabel \"Requirement: ").append(req.definition).append("\" .")
-                    .append("\n\n");
-        }
-        sb.append("\n\n\n");
-
-        // Conformance Classes
-        for (ConformanceClass confClass : documentData.getConformanceClasses().values()) {
-            sb.append("<").append(identifierSpec).append(confClass.definition).append("> a spec:ConformanceClass,\n")
-                    .append("        skos:Concept ;\n")
-                    .append("    skos:definition \"").append(confClass.definition).append("\" ;\n")
-                    .append("    skos:inScheme <").append(identifierSpec).append("> ;\n")
-                    .append("    skos:prefLabel \"Conformance Class ").append(confClass.definition).append("\" ;\n")
-                    .append("    skos:topConceptOf <").append(identifierSpec).append("> .")
-                    .append("\n\n");
-        }
-        sb.append("\n\n\n");
-
-        sb.append("<").append(identifierSpec).append("> a skos:ConceptScheme ;\n")
-                .append("    dcterms:created \"").append(dateCreated).append("\"^^xsd:date ;\n")
-                .append("    dcterms:modified \"").append(dateModified).append("\"^^xsd:date ;\n")
-                .append("    dcterms:source <http://www.opengis.net/def/docs/20-082r2> ;\n")
-                .append("    skos:definition \"A convenience hierarchy for navigating the elements of a specification using the SKOS model\" ;\n")
-                .append("    skos:hasTopConcept <").append(identifierSpec).append("/conf/obs-cpt>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-core>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-basic>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-cpt/Observation>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-core/AbstractObservationCharacteristics>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-core/AbstractObservation>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-basic/ObservationCharacteristics>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-basic/Observation>,\n")
-                .append("		<").append(identifierSpec).append("/conf/obs-basic/ObservingCapability> ;\n")
-                .append("    skos:prefLabel \"Specification elements for OGC 20-082r2 Observations, Measurements and Samples\" .")
-                .append("\n\n");
-
-        FileUtils.write(targetFile, sb, StandardCharsets.UTF_8);
+        };
+    }
+
+    private File classDotFile(String definition) {
+        return new File(target + "_" + StringUtils.replace(definition, "/", "_") + ".dot");
+    }
+
+    @SuppressWarnings("try")
+    private Data loadOrParse(File sourceFile) throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+        if (Utils.isNullOrEmpty(snapshotCache) || parserConfig == null) {
+            return parse(sourceFile);
+        }
+        SnapshotCache cache = new SnapshotCache(new File(snapshotCache));
+        String key = SnapshotCache.key(sourceFile, parserConfig);
+        Data data;
+        try (RunMetrics.Phase phase = metrics.start("load.snapshot")) {
+            data = cache.load(key);
+        }
+        if (data != null) {
+            LOGGER.info("Loaded snapshot {} of {}", key, sourceFile);
+            return data;
+        }
+        data = parse(sourceFile);
+        try (RunMetrics.Phase phase = metrics.start("load.storeSnapshot")) {
+            cache.store(key, data);
+        }
+        return data;
+    }
+
+    @SuppressWarnings("try")
+    private Data parse(File sourceFile) throws IOException, SAXException, ParserConfigurationException, XPathExpressionException {
+        try (RunMetrics.Phase phase = metrics.start("parse")) {
+            return parser.parseSource(sourceFile).getDocumentData();
+        }
+    }
+
+    private void generateRdf(File targetFile, RdfFormat format) throws IOException {
+        artifacts.write(targetFile, out -> emitRdf(out, format));
+    }
+
+    void emitTtl(Writer out) throws IOException {
+        emitRdf(out, RdfFormat.TURTLE);
+    }
+
+    /**
+     * A part of the RDF output that can be written independently.
+     */
+    @FunctionalInterface
+    private static interface RdfSection {
+
+        public void write(RdfWriter rdf) throws IOException;
+    }
+
+    private List<RdfSection> rdfSections() {
+        return Arrays.asList(
+                this::rdfSpecification,
+                this::rdfConformanceTests,
+                this::rdfRequirementClasses,
+                this::rdfRequirements,
+                this::rdfConformanceClasses,
+                this::rdfConceptScheme);
+    }
+
+    /**
+     * Writes the specification as RDF, streaming the sections to the writer
+     * one after the other, so the output is never held in memory. Each RDF
+     * artifact is one generate task, that runs next to the other artifacts.
+     */
+    void emitRdf(Writer out, RdfFormat format) throws IOException {
+        RdfWriter rdf = format.createWriter(out, RDF_PREFIXES);
+        rdf.writeHeader();
+        for (RdfSection section : rdfSections()) {
+            section.write(rdf);
+        }
+        rdf.finish();
+    }
+
+    private String docIri() {
+        return "http://www.opengis.net/def/docs/" + docNumber;
+    }
+
+    private String specIri(CharSequence definition) {
+        return identifierSpec + definition;
+    }
+
+    private void rdfSpecification(RdfWriter rdf) throws IOException {
+        rdf.iri("http://www.opengis.net/spec/docs/" + docNumber + "-anno", RdfWriter.RDF_TYPE, OWL + "Ontology");
+        String doc = docIri();
+        rdf.iri(doc, RdfWriter.RDF_TYPE, SPEC + "Specification")
+                .literal(doc, DCTERMS + "creator", docCreator)
+                .typed(doc, DCTERMS + "dateAccepted", dateAccepted, XSD_DATE)
+                .typed(doc, DCTERMS + "dateSubmitted", dateSubmitted, XSD_DATE)
+                .literal(doc, DCTERMS + "identifier", identifierDoc)
+                .iri(doc, REG + "status", REG + "statusValid")
+                .iri(doc, NA + "doctype", OGCDT + docType)
+                .literal(doc, SPEC + "authority", "Open Geospatial Consortium");
+        for (int confId = 0; confId < store.getConformanceClassCount(); confId++) {
+            rdf.iri(doc, SPEC + "class", specIri(store.getConformanceClassDefinition(confId)));
+        }
+        rdf.typed(doc, SPEC + "date", dateApproved, XSD_DATE)
+                .iri(doc, SPECREL + "implementation", doc)
+                .typed(doc, SKOS + "notation", docNumber, NA + "doc_no")
+                .literal(doc, SKOS + "prefLabel", docTitle)
+                .literal(doc, ADMS + "version", docVersion)
+                .iri(doc, DCAT + "landingPage", landingPage);
+    }
+
+    private void rdfConformanceTests(RdfWriter rdf) throws IOException {
+        final String statement = "Verify that all requirements from the requirements class have been fulfilled.";
+        for (int reqId = 0; reqId < store.getRequirementCount(); reqId++) {
+            String definition = store.getRequirementDefinition(reqId).toString();
+            String test = specIri(definition.replace("/req/", "/conf/"));
+            rdf.iri(test, RdfWriter.RDF_TYPE, SPEC + "ConformanceTest")
+                    .iri(test, RdfWriter.RDF_TYPE, SKOS + "Concept")
+                    .literal(test, SPEC + "method", "Inspect the documentation of the application, schema or profile.")
+                    .literal(test, SPEC + "purpose", statement)
+                    .iri(test, SPEC + "requirement", specIri(definition))
+                    .iri(test, SPEC + "testType", SPEC + "Capabilities");
+            IdList inClass = store.getRequirementClasses(reqId);
+            for (int i = 0; i < inClass.size(); i++) {
+                rdf.iri(test, SKOS + "broader", specIri(store.getClassDefinition(inClass.get(i)).toString().replace("/req/", "/conf/")));
+            }
+            rdf.literal(test, SKOS + "definition", statement)
+                    .iri(test, SKOS + "inScheme", identifierSpec)
+                    .literal(test, SKOS + "prefLabel", "Conformance Test " + specIri(definition));
+        }
+    }
+
+    private void rdfRequirementClasses(RdfWriter rdf) throws IOException {
+        for (int classId = 0; classId < store.getClassCount(); classId++) {
+            String definition = store.getClassDefinition(classId).toString();
+            String subject = specIri(definition);
+            rdf.iri(subject, RdfWriter.RDF_TYPE, SPEC + "RequirementClass")
+                    .iri(subject, RdfWriter.RDF_TYPE, SKOS + "Concept");
+            IdList reqs = store.getClassRequirements(classId);
+            for (int i = 0; i < reqs.size(); i++) {
+                rdf.iri(subject, SPEC + "normativeStatement", specIri(store.getRequirementDefinition(reqs.get(i))));
+            }
+            IdList imports = store.getImports(classId);
+            for (int i = 0; i < imports.size(); i++) {
+                rdf.iri(subject, SKOS + "broader", specIri(store.getClassDefinition(imports.get(i))));
+            }
+            rdf.literal(subject, SKOS + "definition", definition)
+                    .iri(subject, SKOS + "inScheme", identifierSpec)
+                    .literal(subject, SKOS + "prefLabel", "Requirement Class " + definition);
+        }
+    }
+
+    private void rdfRequirements(RdfWriter rdf) throws IOException {
+        for (int reqId = 0; reqId < store.getRequirementCount(); reqId++) {
+            String definition = store.getRequirementDefinition(reqId).toString();
+            String description = Objects.toString(store.getRequirementDescription(reqId), null);
+            String subject = specIri(definition);
+            rdf.iri(subject, RdfWriter.RDF_TYPE, SPEC + "Requirement")
+                    .iri(subject, RdfWriter.RDF_TYPE, SKOS + "Concept")
+                    .literal(subject, DCTERMS + "description", description);
+            IdList inClass = store.getRequirementClasses(reqId);
+            for (int i = 0; i < inClass.size(); i++) {
+                rdf.iri(subject, SKOS + "broader", specIri(store.getClassDefinition(inClass.get(i))));
+            }
+            rdf.literal(subject, SKOS + "definition", description)
+                    .iri(subject, SKOS + "inScheme", identifierSpec)
+                    .literal(subject, SKOS + "prefLabel", "Requirement: " + definition);
+        }
+    }
+
+    private void rdfConformanceClasses(RdfWriter rdf) throws IOException {
+        for (int confId = 0; confId < store.getConformanceClassCount(); confId++) {
+            String definition = store.getConformanceClassDefinition(confId).toString();
+            String subject = specIri(definition);
+            rdf.iri(subject, RdfWriter.RDF_TYPE, SPEC + "ConformanceClass")
+                    .iri(subject, RdfWriter.RDF_TYPE, SKOS + "Concept")
+                    .literal(subject, SKOS + "definition", definition)
+                    .iri(subject, SKOS + "inScheme", identifierSpec)
+                    .literal(subject, SKOS + "prefLabel", "Conformance Class " + definition)
+                    .iri(subject, SKOS + "topConceptOf", identifierSpec);
+        }
+    }
+
+    private void rdfConceptScheme(RdfWriter rdf) throws IOException {
+        String scheme = identifierSpec;
+        rdf.iri(scheme, RdfWriter.RDF_TYPE, SKOS + "ConceptScheme")
+                .typed(scheme, DCTERMS + "created", dateCreated, XSD_DATE)
+                .typed(scheme, DCTERMS + "modified", dateModified, XSD_DATE)
+                .iri(scheme, DCTERMS + "source", docIri())
+                .literal(scheme, SKOS + "definition", "A convenience hierarchy for navigating the elements of a specification using the SKOS model");
+        List<String> concepts = topConcepts == null || topConcepts.isEmpty() ? DEFAULT_TOP_CONCEPTS : topConcepts;
+        for (String topConcept : concepts) {
+            rdf.iri(scheme, SKOS + "hasTopConcept", specIri(topConcept));
+        }
+        rdf.literal(scheme, SKOS + "prefLabel", schemeLabel);
+    }
+
+    /**
+     * Writes the complete model as compact json, see {@link ModelJsonWriter}.
+     */
+    void emitModelJson(Writer out) throws IOException {
+        new ModelJsonWriter(store).write(out);
     }
 
     private void generateReqHtml(File targetFile) throws IOException {
-        StringBuilder sb = new StringBuilder("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\"><html>")
+        artifacts.write(targetFile, this::emitReqHtml);
+    }
+
+    void emitReqHtml(Writer out) throws IOException {
+        out.append("<!DOCTYPE HTML PUBLIC \"-//W3C//DTD HTML 4.01//EN\" \"http://www.w3.org/TR/html4/strict.dtd\"><html>")
                 .append("<head>\n")
                 .append("  <title>All Requirements</title>\n")
                 .append("  <meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">\n")
@@ -266,192 +690,294 @@ public class Generator implements AnnotatedConfigurable<Void, Void> {
                 .append("  <table>\n")
                 .append("    <tr><th colspan=\"3\">Requirements</th></tr>\n")
                 .append("    <tr><th>#</th><th>definition</th><th>description</th></tr>\n");
-        for (Requerement req : documentData.getRequirements().values()) {
-            sb.append("    ")
+        for (int reqId = 0; reqId < store.getRequirementCount(); reqId++) {
+            out.append("    ")
                     .append("<tr>")
-                    .append("<td>").append(req.refCount).append("</td>")
-                    .append("<td class='def'>").append(req.definition).append("</td>")
-                    .append("<td>").append(req.description).append("</td>")
+                    .append("<td>").append(String.valueOf(store.getRequirementRefCount(reqId))).append("</td>")
+                    .append("<td class='def'>").append(store.getRequirementDefinition(reqId)).append("</td>")
+                    .append("<td>").append(store.getRequirementDescription(reqId)).append("</td>")
                     .append("</tr>\n");
         }
-        sb.append("  </table>\n");
+        out.append("  </table>\n");
 
-        sb.append("  <table>\n")
+        out.append("  <table>\n")
                 .append("    <tr><th colspan=\"3\">Recommendations</th></tr>\n")
                 .append("    <tr><th>#</th><th>definition</th><th>description</th></tr>\n");
-        for (Recommendation rec : documentData.getRecommendations().values()) {
-            sb.append("    ")
+        for (int recId = 0; recId < store.getRecommendationCount(); recId++) {
+            out.append("    ")
                     .append("<tr>")
-                    .append("<td>").append(rec.refCount).append("</td>")
-                    .append("<td class='def'>").append(rec.definition).append("</td>")
-                    .append("<td>").append(rec.description).append("</td>")
+                    .append("<td>").append(String.valueOf(store.getRecommendationRefCount(recId))).append("</td>")
+                    .append("<td class='def'>").append(store.getRecommendationDefinition(recId)).append("</td>")
+                    .append("<td>").append(store.getRecommendationDescription(recId)).append("</td>")
                     .append("</tr>\n");
         }
-        sb.append("  </table>\n");
+        out.append("  </table>\n");
 
-        sb.append("  <table>\n")
+        out.append("  <table>\n")
                 .append("    <tr><th colspan=\"4\">RequirementClasses</th></tr>\n")
                 .append("    <tr><th>#</th><th>definition</th><th>name</th><th>type</th></tr>\n");
-        for (RequerementClass confCls : documentData.getRequirementClasses().values()) {
-            sb.append("    ")
+        for (int classId = 0; classId < store.getClassCount(); classId++) {
+            CharSequence name = store.getClassName(classId);
+            out.append("    ")
                     .append("<tr>")
-                    .append("<td>").append(confCls.refCount).append("</td>")
-                    .append("<td class='def'>").append(confCls.definition).append("</td>");
-            if (!confCls.name.isEmpty()) {
-                sb.append("<td>").append(confCls.name).append("</td>");
+                    .append("<td>").append(String.valueOf(store.getClassRefCount(classId))).append("</td>")
+                    .append("<td class='def'>").append(store.getClassDefinition(classId)).append("</td>");
+            if (name.length() > 0) {
+                out.append("<td>").append(name).append("</td>");
             }
-            sb.append("<td>").append(confCls.targetType).append("</td>")
+            out.append("<td>").append(store.getClassTargetType(classId)).append("</td>")
                     .append("</tr>\n");
         }
-        sb.append("  </table>\n");
+        out.append("  </table>\n");
 
-        sb.append("  <table>\n")
+        out.append("  <table>\n")
                 .append("    <tr><th colspan=\"5\">Conformance Classes</th></tr>\n")
                 .append("    <tr><th>definition</th><th>requirement</th><th>purpose</th><th>method</th><th>type</th></tr>\n");
-        for (ConformanceClass confCls : documentData.getConformanceClasses().values()) {
-            sb.append("    ")
+        for (int confId = 0; confId < store.getConformanceClassCount(); confId++) {
+            out.append("    ")
                     .append("<tr>")
-                    .append("<td class='def'>").append(confCls.definition).append("</td>")
-                    .append("<td>").append(confCls.requirement.definition).append("</td>")
-                    .append("<td>").append(confCls.purpose).append("</td>")
-                    .append("<td>").append(confCls.method).append("</td>")
-                    .append("<td>").append(confCls.type).append("</td>")
+                    .append("<td class='def'>").append(store.getConformanceClassDefinition(confId)).append("</td>")
+                    .append("<td>").append(store.getClassDefinition(store.getConformanceClassClass(confId))).append("</td>")
+                    .append("<td>").append(store.getConformanceClassPurpose(confId)).append("</td>")
+                    .append("<td>").append(store.getConformanceClassMethod(confId)).append("</td>")
+                    .append("<td>").append(store.getConformanceClassType(confId)).append("</td>")
                     .append("</tr>\n");
         }
-        sb.append("  </table>\n");
+        out.append("  </table>\n");
 
-        sb.append("</body>")
+        out.append("</body>")
                 .append("</html>");
-        FileUtils.write(targetFile, sb, StandardCharsets.UTF_8);
     }
 
-    private void generateDotFromClass(RequerementClass mainClass, File targetFile) throws IOException {
-        Map<String, RequerementClass> classes = new TreeMap<>();
-        Map<String, Requerement> reqs = new TreeMap<>();
-        Map<String, Recommendation> reccs = new TreeMap<>();
-        gatherFrom(mainClass, classes, reqs, reccs);
-        generateDot(null, targetFile, false, classes, reqs, reccs);
+    private void generateDotFromClass(int classId, File targetFile) throws IOException {
+        generateDot(null, targetFile, false, closure.getClasses(classId), closure.getRequirements(classId), closure.getRecommendations(classId));
     }
 
-    private void gatherFrom(RequerementClass mainClass, Map<String, RequerementClass> classes, Map<String, Requerement> reqs, Map<String, Recommendation> reccs) {
-        classes.put(mainClass.definition, mainClass);
-        for (Requerement req : mainClass.requirements) {
-            reqs.put(req.definition, req);
-        }
-        for (Recommendation rec : mainClass.recommendations) {
-            reccs.put(rec.definition, rec);
+    private void addDotTasks(List<TaskRunner.Task> tasks, Image image, boolean full, boolean classes) {
+        final String name = image == null ? "all" : image.name().toLowerCase();
+        if (full) {
+            File targetFileFull = new File(target + "_" + name + ".dot");
+            tasks.add(measured("generate.dot", () -> generateDot(image, targetFileFull, false)));
         }
-        for (RequerementClass imprt : mainClass.imports) {
-            RequerementClass imprtCls = documentData.findOrCreateRequirementClass(imprt.definition);
-            gatherFrom(imprtCls, classes, reqs, reccs);
+        if (classes) {
+            File targetFileClass = new File(target + "_" + name + "_cls.dot");
+            tasks.add(measured("generate.classesDot", () -> generateDot(image, targetFileClass, true)));
         }
     }
 
-    private void generateDot(Image image) throws IOException {
-        final String name = image == null ? "all" : image.name().toLowerCase();
-        File targetFileFull = new File(target + "_" + name + ".dot");
-        generateDot(image, targetFileFull, false);
-        File targetFileClass = new File(target + "_" + name + "_cls.dot");
-        generateDot(image, targetFileClass, true);
+    private void generateDot(Image image, File targetFile, boolean classesOnly) throws IOException {
+        generateDot(image, targetFile, classesOnly, allIds(store.getClassCount()), allIds(store.getRequirementCount()), allIds(store.getRecommendationCount()));
     }
 
-    private void generateDot(Image image, File targetFile, boolean classesOnly) throws IOException {
-        generateDot(image, targetFile, classesOnly, documentData.getRequirementClasses(), documentData.getRequirements(), documentData.getRecommendations());
+    /**
+     * Writes the full graph, or the graph of one image, to the given writer.
+     */
+    void emitDot(Writer out, Image image, boolean classesOnly) throws IOException {
+        emitDot(out, store, image, classesOnly, allIds(store.getClassCount()), allIds(store.getRequirementCount()), allIds(store.getRecommendationCount()));
+    }
+
+    /**
+     * Writes the graph of the class with the given id and its imports to the
+     * given writer.
+     */
+    void emitClassDot(Writer out, int classId) throws IOException {
+        emitDot(out, store, null, false, closure.getClasses(classId), closure.getRequirements(classId), closure.getRecommendations(classId));
+    }
+
+    private static BitSet allIds(int count) {
+        BitSet ids = new BitSet(count);
+        ids.set(0, count);
+        return ids;
     }
 
-    private void generateDot(Image image, File targetFile, boolean classesOnly, Map<String, RequerementClass> classes, Map<String, Requerement> reqs, Map<String, Recommendation> reccs) throws IOException {
-        StringBuilder sb = new StringBuilder("digraph G {\n")
+    /**
+     * Generates a dot file with the given classes, requirements and
+     * recommendations, given as ids in the GraphStore.
+     */
+    private void generateDot(Image image, File targetFile, boolean classesOnly, BitSet classes, BitSet reqs, BitSet reccs) throws IOException {
+        final GraphStore graphStore = store;
+        artifacts.write(targetFile, out -> emitDot(out, graphStore, image, classesOnly, classes, reqs, reccs));
+        if (renderSvg) {
+            pendingRenders.add(new RenderJob(svgFile(targetFile), buildGraph(graphStore, image, classesOnly, classes, reqs, reccs), targetFile.getName()));
+        }
+    }
+
+    private static void emitDot(Writer out, GraphStore store, Image image, boolean classesOnly, BitSet classes, BitSet reqs, BitSet reccs) throws IOException {
+        out.append("digraph G {\n")
                 .append("  rankdir=LR;splines=polyline;\n");
         if (!classesOnly) {
-            sb.append("  node [shape=box];\n")
+            out.append("  node [shape=box];\n")
                     .append("  {\n");
-            for (Requerement req : reqs.values()) {
-                if (image != null && !req.inImage.contains(image)) {
+            for (int req = reqs.nextSetBit(0); req >= 0; req = reqs.nextSetBit(req + 1)) {
+                if (image != null && !store.isRequirementInImage(req, image)) {
                     continue;
                 }
-                sb.append("    ")
-                        .append('"').append(req.definition).append('"')
-                        //.append(" -> ")
-                        //.append('"').append(req.description).append('"')
+                out.append("    ")
+                        .append('"').append(store.getRequirementDefinition(req)).append('"')
                         .append("\n");
             }
-            sb.append("  };\n\n");
+            out.append("  };\n\n");
         }
 
         if (!classesOnly) {
-            sb.append("  node [shape=box;style=dotted];\n")
+            out.append("  node [shape=box;style=dotted];\n")
                     .append("  {\n");
-            for (Recommendation rec : reccs.values()) {
-                if (image != null && !rec.inImage.contains(image)) {
+            for (int rec = reccs.nextSetBit(0); rec >= 0; rec = reccs.nextSetBit(rec + 1)) {
+                if (image != null && !store.isRecommendationInImage(rec, image)) {
                     continue;
                 }
-                sb.append("    ")
-                        .append('"').append(rec.definition).append('"')
-                        //.append(" -> ")
-                        //.append('"').append(req.description).append('"')
+                out.append("    ")
+                        .append('"').append(store.getRecommendationDefinition(rec)).append('"')
                         .append("\n");
             }
-            sb.append("  };\n\n");
+            out.append("  };\n\n");
         }
 
-        sb.append("  node [shape=plain];\n")
+        out.append("  node [shape=plain];\n")
                 .append("  {\n");
-        for (RequerementClass rq : classes.values()) {
-            if (image != null && !rq.inImage.contains(image)) {
+        for (int rq = classes.nextSetBit(0); rq >= 0; rq = classes.nextSetBit(rq + 1)) {
+            if (image != null && !store.isClassInImage(rq, image)) {
                 continue;
             }
-            sb.append("    ")
-                    .append('"').append(rq.definition).append('"')
+            CharSequence definition = store.getClassDefinition(rq);
+            out.append("    ")
+                    .append('"').append(definition).append('"')
                     .append("[label=<<TABLE>")
-                    .append("<TR><TD>").append(rq.definition).append("</TD></TR>")
-                    .append("<TR><TD>").append(rq.name).append("</TD></TR>")
-                    .append("<TR><TD>").append(rq.targetType).append("</TD></TR>")
+                    .append("<TR><TD>").append(definition).append("</TD></TR>")
+                    .append("<TR><TD>").append(store.getClassName(rq)).append("</TD></TR>")
+                    .append("<TR><TD>").append(store.getClassTargetType(rq)).append("</TD></TR>")
                     .append("</TABLE>>]")
                     .append("\n");
         }
-        sb.append("  };\n\n")
+        out.append("  };\n\n")
                 .append("  node [shape=ellipse;style=solid];\n");
-        for (RequerementClass rq : classes.values()) {
-            if (image != null && !rq.inImage.contains(image)) {
+        for (int rq = classes.nextSetBit(0); rq >= 0; rq = classes.nextSetBit(rq + 1)) {
+            if (image != null && !store.isClassInImage(rq, image)) {
                 continue;
             }
+            CharSequence definition = store.getClassDefinition(rq);
             if (!classesOnly) {
-                for (Requerement req : rq.requirements) {
-                    sb.append("      ")
-                            .append('"').append(rq.definition).append('"')
+                IdList classReqs = store.getClassRequirements(rq);
+                for (int i = 0; i < classReqs.size(); i++) {
+                    out.append("      ")
+                            .append('"').append(definition).append('"')
                             .append(" -> ")
-                            .append('"').append(req.definition).append('"')
+                            .append('"').append(store.getRequirementDefinition(classReqs.get(i))).append('"')
                             .append(";\n");
                 }
-            }
-            if (!classesOnly) {
-                for (Recommendation rec : rq.recommendations) {
-                    sb.append("      ")
-                            .append('"').append(rq.definition).append('"')
+                IdList classRecs = store.getClassRecommendations(rq);
+                for (int i = 0; i < classRecs.size(); i++) {
+                    out.append("      ")
+                            .append('"').append(definition).append('"')
                             .append(" -> ")
-                            .append('"').append(rec.definition).append('"')
+                            .append('"').append(store.getRecommendationDefinition(classRecs.get(i))).append('"')
                             .append("[style=dotted];\n");
                 }
             }
-            for (RequerementClass dep : rq.imports) {
-                sb.append("      ")
-                        .append('"').append(rq.definition).append('"')
+            IdList imports = store.getImports(rq);
+            for (int i = 0; i < imports.size(); i++) {
+                out.append("      ")
+                        .append('"').append(definition).append('"')
                         .append(" -> ")
-                        .append('"').append(dep.definition).append('"')
+                        .append('"').append(store.getClassDefinition(imports.get(i))).append('"')
                         .append("[style=dashed];\n");
             }
             if (!classesOnly) {
-                for (String dep : rq.dependencies) {
-                    sb.append("      ")
-                            .append('"').append(rq.definition).append('"')
+                for (int i = 0; i < store.getDependencyCount(rq); i++) {
+                    out.append("      ")
+                            .append('"').append(definition).append('"')
                             .append(" -> ")
-                            .append('"').append(dep).append('"')
+                            .append('"').append(store.getDependency(rq, i)).append('"')
                             .append("[style=dotted];\n");
                 }
             }
         }
-        sb.append("}\n");
-        FileUtils.write(targetFile, sb, StandardCharsets.UTF_8);
+        out.append("}\n");
+    }
+
+    private static File svgFile(File dotFile) {
+        String name = dotFile.getName();
+        if (name.endsWith(".dot")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        File dir = dotFile.getAbsoluteFile().getParentFile();
+        return new File(new File(dir, "svg"), name + ".svg");
+    }
+
+    /**
+     * Builds the same graph as the dot file, for the built-in renderer.
+     */
+    private static Graph buildGraph(GraphStore store, Image image, boolean classesOnly, BitSet classes, BitSet reqs, BitSet reccs) {
+        Graph graph = new Graph();
+        if (!classesOnly) {
+            for (int req = reqs.nextSetBit(0); req >= 0; req = reqs.nextSetBit(req + 1)) {
+                if (image == null || store.isRequirementInImage(req, image)) {
+                    graph.addNode(store.getRequirementDefinition(req).toString(), Shape.BOX, Style.SOLID);
+                }
+            }
+            for (int rec = reccs.nextSetBit(0); rec >= 0; rec = reccs.nextSetBit(rec + 1)) {
+                if (image == null || store.isRecommendationInImage(rec, image)) {
+                    graph.addNode(store.getRecommendationDefinition(rec).toString(), Shape.BOX, Style.DOTTED);
+                }
+            }
+        }
+        for (int rq = classes.nextSetBit(0); rq >= 0; rq = classes.nextSetBit(rq + 1)) {
+            if (image == null || store.isClassInImage(rq, image)) {
+                String definition = store.getClassDefinition(rq).toString();
+                graph.addNode(definition, Shape.TABLE, Style.SOLID, definition, String.valueOf(store.getClassName(rq)), String.valueOf(store.getClassTargetType(rq)));
+            }
+        }
+        for (int rq = classes.nextSetBit(0); rq >= 0; rq = classes.nextSetBit(rq + 1)) {
+            if (image != null && !store.isClassInImage(rq, image)) {
+                continue;
+            }
+            String definition = store.getClassDefinition(rq).toString();
+            if (!classesOnly) {
+                IdList classReqs = store.getClassRequirements(rq);
+                for (int i = 0; i < classReqs.size(); i++) {
+                    graph.addEdge(definition, store.getRequirementDefinition(classReqs.get(i)).toString(), Style.SOLID);
+                }
+                IdList classRecs = store.getClassRecommendations(rq);
+                for (int i = 0; i < classRecs.size(); i++) {
+                    graph.addEdge(definition, store.getRecommendationDefinition(classRecs.get(i)).toString(), Style.DOTTED);
+                }
+            }
+            IdList imports = store.getImports(rq);
+            for (int i = 0; i < imports.size(); i++) {
+                graph.addEdge(definition, store.getClassDefinition(imports.get(i)).toString(), Style.DASHED);
+            }
+            if (!classesOnly) {
+                for (int i = 0; i < store.getDependencyCount(rq); i++) {
+                    graph.addEdge(definition, store.getDependency(rq, i).toString(), Style.DOTTED);
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Lays out and renders the graphs collected in this run, in parallel.
+     */
+    @SuppressWarnings("try")
+    private void renderPending() throws IOException {
+        List<TaskRunner.Task> tasks = new ArrayList<>();
+        synchronized (pendingRenders) {
+            for (RenderJob job : pendingRenders) {
+                tasks.add(() -> {
+                    try (RunMetrics.Phase phase = metrics.start("render.layout")) {
+                        new LayeredLayout().layout(job.graph);
+                    }
+                    try (RunMetrics.Phase phase = metrics.start("render.svg")) {
+                        artifacts.write(job.file, new SvgRenderer().render(job.graph, job.title));
+                    }
+                });
+            }
+            pendingRenders.clear();
+        }
+        if (!tasks.isEmpty()) {
+            LOGGER.info("Rendering {} graphs.", tasks.size());
+        }
+        new TaskRunner("render", threads(renderThreads)).run(tasks);
     }
 
 }
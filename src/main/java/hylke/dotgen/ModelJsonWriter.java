@@ -0,0 +1,145 @@
+package hylke.dotgen;
+
+import com.google.gson.stream.JsonWriter;
+import hylke.dotgen.model.GraphStore;
+import hylke.dotgen.model.GraphStore.IdList;
+import hylke.dotgen.model.Image;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes the complete model as one compact json document, for web clients.
+ *
+ * Entities are written as arrays, the position in the array is the id of the
+ * entity. Relations refer to these ids. Image membership is written as a
+ * bitmask, bit n standing for entry n of the top level "images" array. The
+ * document looks like:
+ * <pre>
+ * {"version":1,"nameSpace":"...","images":["OBS","SAM","NONE"],
+ *  "classes":[{"definition":"...","name":"...","targetType":"...","images":1,"refCount":2,
+ *              "imports":[3],"requirements":[0,1],"recommendations":[],"dependencies":["..."]}],
+ *  "requirements":[{"definition":"...","description":"...","images":1,"refCount":1,"classes":[0]}],
+ *  "recommendations":[{"definition":"...","description":"...","images":1,"refCount":1}],
+ *  "conformanceClasses":[{"definition":"...","class":0,"purpose":"...","method":"...","type":"..."}]}
+ * </pre>
+ * The json is streamed, the document is never held in memory.
+ *
+ * @author hylke
+ */
+public class ModelJsonWriter {
+
+    public static final int VERSION = 1;
+
+    private final GraphStore store;
+
+    /**
+     * @param store The graph store to write, that defines the ids.
+     */
+    public ModelJsonWriter(GraphStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Writes the model to the given writer.
+     *
+     * @param out The writer to write to, is not closed.
+     * @throws IOException If writing fails.
+     */
+    public void write(Writer out) throws IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.setHtmlSafe(false);
+        json.setSerializeNulls(false);
+        json.beginObject();
+        json.name("version").value(VERSION);
+        json.name("nameSpace").value(store.getNameSpace());
+        json.name("images").beginArray();
+        for (Image image : Image.values()) {
+            json.value(image.name());
+        }
+        json.endArray();
+        writeClasses(json);
+        writeRequirements(json);
+        writeRecommendations(json);
+        writeConformanceClasses(json);
+        json.endObject();
+        json.flush();
+    }
+
+    private void writeClasses(JsonWriter json) throws IOException {
+        json.name("classes").beginArray();
+        for (int id = 0; id < store.getClassCount(); id++) {
+            json.beginObject();
+            json.name("definition").value(string(store.getClassDefinition(id)));
+            json.name("name").value(string(store.getClassName(id)));
+            json.name("targetType").value(string(store.getClassTargetType(id)));
+            json.name("images").value(store.getClassImages(id));
+            json.name("refCount").value(store.getClassRefCount(id));
+            writeIds(json, "imports", store.getImports(id));
+            writeIds(json, "requirements", store.getClassRequirements(id));
+            writeIds(json, "recommendations", store.getClassRecommendations(id));
+            json.name("dependencies").beginArray();
+            for (int i = 0; i < store.getDependencyCount(id); i++) {
+                json.value(store.getDependency(id, i).toString());
+            }
+            json.endArray();
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private void writeRequirements(JsonWriter json) throws IOException {
+        json.name("requirements").beginArray();
+        for (int id = 0; id < store.getRequirementCount(); id++) {
+            json.beginObject();
+            json.name("definition").value(string(store.getRequirementDefinition(id)));
+            json.name("description").value(string(store.getRequirementDescription(id)));
+            json.name("images").value(store.getRequirementImages(id));
+            json.name("refCount").value(store.getRequirementRefCount(id));
+            writeIds(json, "classes", store.getRequirementClasses(id));
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private void writeRecommendations(JsonWriter json) throws IOException {
+        json.name("recommendations").beginArray();
+        for (int id = 0; id < store.getRecommendationCount(); id++) {
+            json.beginObject();
+            json.name("definition").value(string(store.getRecommendationDefinition(id)));
+            json.name("description").value(string(store.getRecommendationDescription(id)));
+            json.name("images").value(store.getRecommendationImages(id));
+            json.name("refCount").value(store.getRecommendationRefCount(id));
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private void writeConformanceClasses(JsonWriter json) throws IOException {
+        json.name("conformanceClasses").beginArray();
+        for (int id = 0; id < store.getConformanceClassCount(); id++) {
+            json.beginObject();
+            json.name("definition").value(string(store.getConformanceClassDefinition(id)));
+            int classId = store.getConformanceClassClass(id);
+            if (classId >= 0) {
+                json.name("class").value(classId);
+            }
+            json.name("purpose").value(string(store.getConformanceClassPurpose(id)));
+            json.name("method").value(string(store.getConformanceClassMethod(id)));
+            json.name("type").value(string(store.getConformanceClassType(id)));
+            json.endObject();
+        }
+        json.endArray();
+    }
+
+    private static String string(CharSequence text) {
+        return text == null ? null : text.toString();
+    }
+
+    private static void writeIds(JsonWriter json, String name, IdList ids) throws IOException {
+        json.name(name).beginArray();
+        for (int i = 0; i < ids.size(); i++) {
+            json.value(ids.get(i));
+        }
+        json.endArray();
+    }
+}
@@ -0,0 +1,598 @@
+package hylke.dotgen;
+
+import com.google.gson.stream.JsonWriter;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import hylke.dotgen.model.ClosureIndex;
+import hylke.dotgen.model.GraphStore;
+import hylke.dotgen.model.Image;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves queries over the model of a Generator that was loaded once, so that
+ * tools do not have to run the whole generator to answer one question.
+ *
+ * All endpoints take GET requests, with the definition to query as the
+ * "definition" parameter:
+ * <ul>
+ * <li>/entity: The requirement class, requirement, recommendation or
+ * conformance class with the definition, as json.</li>
+ * <li>/imports: The direct and transitive imports of a requirement
+ * class.</li>
+ * <li>/dependents: The classes that contain a requirement, and all classes
+ * that import those, directly or indirectly.</li>
+ * <li>/class.dot: The graph of a requirement class and its imports, as
+ * dot.</li>
+ * <li>/class.json: The closure of a requirement class, as json.</li>
+ * <li>/model.json: The complete model, see {@link ModelJsonWriter}, without
+ * parameters.</li>
+ * </ul>
+ * The model does not change while serving, so each response carries an ETag
+ * made from a hash of its content. Responses are gzip compressed when the
+ * client accepts it. Requests are read by a fixed number of threads, and
+ * handled by a fixed number of threads with a bounded queue. When the queue is
+ * full, the request is answered with 503 Service Unavailable right away, so
+ * the thread accepting connections is never held up.
+ *
+ * @author hylke
+ */
+public class ModelServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ModelServer.class.getName());
+
+    private static final String TYPE_JSON = "application/json; charset=utf-8";
+    private static final String TYPE_DOT = "text/vnd.graphviz; charset=utf-8";
+    private static final String TYPE_TEXT = "text/plain; charset=utf-8";
+    /**
+     * Responses smaller than this are not worth compressing.
+     */
+    private static final int MIN_GZIP_SIZE = 512;
+    private static final String GZIP_TAG_SUFFIX = "-gz";
+
+    /**
+     * Produces the content of a response.
+     */
+    private static interface Body {
+
+        public void write(Writer out) throws IOException;
+    }
+
+    /**
+     * The content of a response, with its hash. The compressed form is made
+     * when it is first needed, and kept.
+     */
+    private static final class Content {
+
+        private final String contentType;
+        private final byte[] bytes;
+        private final String hash;
+        private byte[] gzipped;
+
+        Content(String contentType, Body body) throws IOException {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            try (Writer out = new OutputStreamWriter(buffer, StandardCharsets.UTF_8)) {
+                body.write(out);
+            }
+            this.contentType = contentType;
+            this.bytes = buffer.toByteArray();
+            this.hash = hash(bytes);
+        }
+
+        synchronized byte[] getGzipped() throws IOException {
+            if (gzipped == null) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+                try (OutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write(bytes);
+                }
+                gzipped = compressed.toByteArray();
+            }
+            return gzipped;
+        }
+    }
+
+    /**
+     * A response that is not a success, with a status code and a message.
+     */
+    private static class RequestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    /**
+     * A handler that answers a request with the given parameters.
+     */
+    private static interface Endpoint {
+
+        public void handle(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException;
+    }
+
+    private final Generator generator;
+    private final GraphStore store;
+    private final ClosureIndex closure;
+    private final String host;
+    private final int port;
+    private final int threads;
+    private final int queueSize;
+    private HttpServer server;
+    private ExecutorService readers;
+    private ThreadPoolExecutor executor;
+    /**
+     * The complete model, made once since the model does not change.
+     */
+    private Content modelJson;
+
+    /**
+     * @param generator The generator with the loaded model, see
+     * {@link Generator#loadModel()}.
+     * @param host The host name or address to listen on.
+     * @param port The port to listen on, 0 for any free port.
+     * @param threads The number of threads handling requests, 0 for one per
+     * processor.
+     * @param queueSize The number of requests that can wait for a thread.
+     */
+    public ModelServer(Generator generator, String host, int port, int threads, int queueSize) {
+        this.generator = generator;
+        this.store = generator.getGraphStore();
+        this.closure = generator.getClosureIndex();
+        if (store == null || closure == null) {
+            throw new IllegalStateException("The model of the generator is not loaded.");
+        }
+        this.host = host;
+        this.port = port;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Starts listening. The server runs until stopped.
+     *
+     * @throws IOException If the server could not be bound.
+     */
+    public void start() throws IOException {
+        modelJson = new Content(TYPE_JSON, generator::emitModelJson);
+        executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueSize)),
+                new NamedThreadFactory("serve-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        readers = Executors.newFixedThreadPool(threads, new NamedThreadFactory("serve-read-"));
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.setExecutor(readers);
+        addEndpoint("/entity", this::entity);
+        addEndpoint("/imports", this::imports);
+        addEndpoint("/dependents", this::dependents);
+        addEndpoint("/class.dot", this::classDot);
+        addEndpoint("/class.json", this::classJson);
+        addEndpoint("/model.json", (exchange, params) -> send(exchange, modelJson));
+        server.start();
+        LOGGER.info("Serving {} on http://{}:{}/ with {} threads", generator.getSourceFile(), host, getPort(), threads);
+    }
+
+    /**
+     * @return The port the server listens on.
+     */
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the server, waiting at most the given time for running requests.
+     *
+     * @param delaySeconds The maximum time to wait for running requests.
+     */
+    public void stop(int delaySeconds) {
+        if (server == null) {
+            return;
+        }
+        server.stop(delaySeconds);
+        readers.shutdown();
+        executor.shutdown();
+        server = null;
+        LOGGER.info("Stopped serving {}", generator.getSourceFile());
+    }
+
+    private void addEndpoint(String path, Endpoint endpoint) {
+        server.createContext(path, new EndpointHandler(path, endpoint, executor));
+    }
+
+    /**
+     * Hands the request to the executor, or answers 503 if it is full. On the
+     * executor, checks the method and path, parses the parameters and turns
+     * failures into error responses.
+     */
+    private static class EndpointHandler implements HttpHandler {
+
+        private final String path;
+        private final Endpoint endpoint;
+        private final Executor executor;
+
+        EndpointHandler(String path, Endpoint endpoint, Executor executor) {
+            this.path = path;
+            this.endpoint = endpoint;
+            this.executor = executor;
+        }
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                executor.execute(() -> respond(exchange));
+            } catch (RejectedExecutionException ex) {
+                LOGGER.debug("Rejected {}, all threads are busy", exchange.getRequestURI());
+                try {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                    sendError(exchange, 503, "Too many requests, try again later.");
+                } finally {
+                    exchange.close();
+                }
+            }
+        }
+
+        private void respond(HttpExchange exchange) {
+            try {
+                try {
+                    String method = exchange.getRequestMethod();
+                    if (!"GET".equals(method) && !"HEAD".equals(method)) {
+                        exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                        throw new RequestException(405, "Method not allowed: " + method);
+                    }
+                    if (!path.equals(exchange.getRequestURI().getPath())) {
+                        throw new RequestException(404, "Not found: " + exchange.getRequestURI().getPath());
+                    }
+                    endpoint.handle(exchange, parseQuery(exchange.getRequestURI().getRawQuery()));
+                } catch (RequestException ex) {
+                    sendError(exchange, ex.status, ex.getMessage());
+                } catch (IOException | RuntimeException ex) {
+                    LOGGER.error("Failed to handle {}", exchange.getRequestURI(), ex);
+                    sendError(exchange, 500, "Internal error.");
+                }
+            } catch (IOException ex) {
+                LOGGER.debug("Failed to respond to {}", exchange.getRequestURI(), ex);
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (Utils.isNullOrEmpty(rawQuery)) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int idx = pair.indexOf('=');
+            String name = idx < 0 ? pair : pair.substring(0, idx);
+            String value = idx < 0 ? "" : pair.substring(idx + 1);
+            params.putIfAbsent(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return params;
+    }
+
+    private static String requireParam(Map<String, String> params, String name) throws RequestException {
+        String value = params.get(name);
+        if (Utils.isNullOrEmpty(value)) {
+            throw new RequestException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private int requireClass(Map<String, String> params) throws RequestException {
+        String definition = requireParam(params, "definition");
+        int classId = store.getClassId(definition);
+        if (classId < 0) {
+            throw new RequestException(404, "No requirement class: " + definition);
+        }
+        return classId;
+    }
+
+    private void entity(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException {
+        String definition = requireParam(params, "definition");
+        int classId = store.getClassId(definition);
+        if (classId >= 0) {
+            sendJson(exchange, json -> {
+                json.name("kind").value("requirementClass");
+                json.name("definition").value(definition);
+                json.name("name").value(string(store.getClassName(classId)));
+                json.name("targetType").value(string(store.getClassTargetType(classId)));
+                writeImages(json, store.getClassImages(classId));
+                json.name("refCount").value(store.getClassRefCount(classId));
+                writeClasses(json, "imports", store.getImports(classId));
+                json.name("requirements").beginArray();
+                GraphStore.IdList reqs = store.getClassRequirements(classId);
+                for (int i = 0; i < reqs.size(); i++) {
+                    json.value(store.getRequirementDefinition(reqs.get(i)).toString());
+                }
+                json.endArray();
+                json.name("recommendations").beginArray();
+                GraphStore.IdList recs = store.getClassRecommendations(classId);
+                for (int i = 0; i < recs.size(); i++) {
+                    json.value(store.getRecommendationDefinition(recs.get(i)).toString());
+                }
+                json.endArray();
+                json.name("dependencies").beginArray();
+                for (int i = 0; i < store.getDependencyCount(classId); i++) {
+                    json.value(store.getDependency(classId, i).toString());
+                }
+                json.endArray();
+            });
+            return;
+        }
+        int reqId = store.getRequirementId(definition);
+        if (reqId >= 0) {
+            sendJson(exchange, json -> {
+                json.name("kind").value("requirement");
+                json.name("definition").value(definition);
+                json.name("description").value(string(store.getRequirementDescription(reqId)));
+                writeImages(json, store.getRequirementImages(reqId));
+                json.name("refCount").value(store.getRequirementRefCount(reqId));
+                writeClasses(json, "classes", store.getRequirementClasses(reqId));
+            });
+            return;
+        }
+        int recId = store.getRecommendationId(definition);
+        if (recId >= 0) {
+            sendJson(exchange, json -> {
+                json.name("kind").value("recommendation");
+                json.name("definition").value(definition);
+                json.name("description").value(string(store.getRecommendationDescription(recId)));
+                writeImages(json, store.getRecommendationImages(recId));
+                json.name("refCount").value(store.getRecommendationRefCount(recId));
+            });
+            return;
+        }
+        int confId = store.getConformanceClassId(definition);
+        if (confId >= 0) {
+            sendJson(exchange, json -> {
+                json.name("kind").value("conformanceClass");
+                json.name("definition").value(definition);
+                int confClassId = store.getConformanceClassClass(confId);
+                if (confClassId >= 0) {
+                    json.name("class").value(store.getClassDefinition(confClassId).toString());
+                }
+                json.name("purpose").value(string(store.getConformanceClassPurpose(confId)));
+                json.name("method").value(string(store.getConformanceClassMethod(confId)));
+                json.name("type").value(string(store.getConformanceClassType(confId)));
+            });
+            return;
+        }
+        throw new RequestException(404, "No entity: " + definition);
+    }
+
+    private void imports(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException {
+        int classId = requireClass(params);
+        BitSet transitive = closure.getClasses(classId);
+        transitive.clear(classId);
+        sendJson(exchange, json -> {
+            json.name("definition").value(store.getClassDefinition(classId).toString());
+            writeClasses(json, "imports", store.getImports(classId));
+            json.name("transitive").beginArray();
+            for (int id = transitive.nextSetBit(0); id >= 0; id = transitive.nextSetBit(id + 1)) {
+                json.value(store.getClassDefinition(id).toString());
+            }
+            json.endArray();
+        });
+    }
+
+    private void dependents(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException {
+        String definition = requireParam(params, "definition");
+        int reqId = store.getRequirementId(definition);
+        if (reqId < 0) {
+            throw new RequestException(404, "No requirement: " + definition);
+        }
+        GraphStore.IdList direct = store.getRequirementClasses(reqId);
+        sendJson(exchange, json -> {
+            json.name("definition").value(definition);
+            writeClasses(json, "classes", direct);
+            json.name("dependents").beginArray();
+            for (int classId = 0; classId < store.getClassCount(); classId++) {
+                if (closure.containsRequirement(classId, reqId)) {
+                    json.value(store.getClassDefinition(classId).toString());
+                }
+            }
+            json.endArray();
+        });
+    }
+
+    private void classDot(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException {
+        int classId = requireClass(params);
+        send(exchange, TYPE_DOT, out -> generator.emitClassDot(out, classId));
+    }
+
+    private void classJson(HttpExchange exchange, Map<String, String> params) throws IOException, RequestException {
+        int classId = requireClass(params);
+        BitSet classes = closure.getClasses(classId);
+        BitSet reqs = closure.getRequirements(classId);
+        BitSet recs = closure.getRecommendations(classId);
+        sendJson(exchange, json -> {
+            json.name("definition").value(store.getClassDefinition(classId).toString());
+            json.name("classes").beginArray();
+            for (int id = classes.nextSetBit(0); id >= 0; id = classes.nextSetBit(id + 1)) {
+                json.value(store.getClassDefinition(id).toString());
+            }
+            json.endArray();
+            json.name("requirements").beginArray();
+            for (int id = reqs.nextSetBit(0); id >= 0; id = reqs.nextSetBit(id + 1)) {
+                json.value(store.getRequirementDefinition(id).toString());
+            }
+            json.endArray();
+            json.name("recommendations").beginArray();
+            for (int id = recs.nextSetBit(0); id >= 0; id = recs.nextSetBit(id + 1)) {
+                json.value(store.getRecommendationDefinition(id).toString());
+            }
+            json.endArray();
+        });
+    }
+
+    /**
+     * Writes the members of one json object.
+     */
+    private static interface JsonBody {
+
+        public void write(JsonWriter json) throws IOException;
+    }
+
+    private static void sendJson(HttpExchange exchange, JsonBody body) throws IOException {
+        send(exchange, TYPE_JSON, out -> {
+            JsonWriter json = new JsonWriter(out);
+            json.setHtmlSafe(false);
+            json.setSerializeNulls(false);
+            json.beginObject();
+            body.write(json);
+            json.endObject();
+            json.flush();
+        });
+    }
+
+    private static void writeImages(JsonWriter json, int images) throws IOException {
+        json.name("images").beginArray();
+        for (Image image : Image.values()) {
+            if ((images & (1 << image.ordinal())) != 0) {
+                json.value(image.name());
+            }
+        }
+        json.endArray();
+    }
+
+    /**
+     * Writes the definitions of the given requirement classes.
+     */
+    private void writeClasses(JsonWriter json, String name, GraphStore.IdList classIds) throws IOException {
+        json.name(name).beginArray();
+        for (int i = 0; i < classIds.size(); i++) {
+            json.value(store.getClassDefinition(classIds.get(i)).toString());
+        }
+        json.endArray();
+    }
+
+    private static String string(CharSequence text) {
+        return text == null ? null : text.toString();
+    }
+
+    /**
+     * Sends the content produced by the body, with an ETag, or only the status
+     * 304 if the client already has it. The content is compressed if the
+     * client accepts gzip.
+     */
+    private static void send(HttpExchange exchange, String contentType, Body body) throws IOException {
+        send(exchange, new Content(contentType, body));
+    }
+
+    private static void send(HttpExchange exchange, Content content) throws IOException {
+        boolean gzip = content.bytes.length >= MIN_GZIP_SIZE && acceptsGzip(exchange.getRequestHeaders());
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", content.contentType);
+        headers.set("ETag", '"' + content.hash + (gzip ? GZIP_TAG_SUFFIX : "") + '"');
+        headers.set("Vary", "Accept-Encoding");
+        headers.set("Cache-Control", "no-cache");
+        if (matches(exchange.getRequestHeaders().getFirst("If-None-Match"), content.hash)) {
+            exchange.sendResponseHeaders(304, -1);
+            return;
+        }
+        if (gzip) {
+            headers.set("Content-Encoding", "gzip");
+            sendBytes(exchange, 200, content.getGzipped());
+            return;
+        }
+        sendBytes(exchange, 200, content.bytes);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", TYPE_TEXT);
+        sendBytes(exchange, status, (message + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void sendBytes(HttpExchange exchange, int status, byte[] content) throws IOException {
+        if ("HEAD".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Content-Length", Integer.toString(content.length));
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        exchange.sendResponseHeaders(status, content.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(content);
+        }
+    }
+
+    private static boolean acceptsGzip(Headers requestHeaders) {
+        for (String accept : requestHeaders.getOrDefault("Accept-Encoding", Collections.emptyList())) {
+            for (String coding : accept.split(",")) {
+                String[] parts = coding.trim().split(";");
+                if ("gzip".equalsIgnoreCase(parts[0].trim()) && !(parts.length > 1 && parts[1].replace(" ", "").equals("q=0"))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks an If-None-Match header against the hash of the content. The
+     * compressed and uncompressed variants have the same content.
+     */
+    private static boolean matches(String ifNoneMatch, String hash) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag)) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            tag = tag.replace("\"", "");
+            if (tag.endsWith(GZIP_TAG_SUFFIX)) {
+                tag = tag.substring(0, tag.length() - GZIP_TAG_SUFFIX.length());
+            }
+            if (tag.equals(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String hash(byte[] content) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder hex = new StringBuilder(32);
+            for (int i = 0; i < 16; i++) {
+                hex.append(Character.forDigit((digest[i] >> 4) & 0xF, 16))
+                        .append(Character.forDigit(digest[i] & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+}
@@ -20,4 +20,36 @@ public interface Parser extends AnnotatedConfigurable<Void, Void> {
     public Parser parseSource(File sourceFile) throws IOException, ParserConfigurationException, XPathExpressionException, DOMException, SAXException;
 
     public Parser reset();
+
+    /**
+     * Sets the metrics to record the phases of parsing in.
+     *
+     * @param metrics The metrics of the current run.
+     * @return this.
+     */
+    public default Parser setMetrics(RunMetrics metrics) {
+        return this;
+    }
+
+    /**
+     * Sets whether the source may be memory-mapped. Mapped files stay locked
+     * on some platforms until the mapping is garbage collected.
+     *
+     * @param mapSource false to read the source into the heap.
+     * @return this.
+     */
+    public default Parser setMapSource(boolean mapSource) {
+        return this;
+    }
+
+    /**
+     * Limits the number of threads used for parsing, overriding the
+     * configuration.
+     *
+     * @param maxThreads The maximum number of threads, 0 for no limit.
+     * @return this.
+     */
+    public default Parser setMaxThreads(int maxThreads) {
+        return this;
+    }
 }
@@ -0,0 +1,253 @@
+package hylke.dotgen;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A set of regular expressions that can quickly tell if a value fully matches
+ * any of them.
+ *
+ * <ul>
+ * <li>Expressions without special characters are looked up in a hash set.</li>
+ * <li>Expressions that start with a literal prefix are stored in a prefix
+ * trie, and are only tried on values that start with that prefix.</li>
+ * <li>All other expressions are combined into a single alternation.</li>
+ * <li>Verdicts are cached per value.</li>
+ * </ul>
+ * Since the expressions come from the configuration, each match attempt gets a
+ * budget of steps. An expression that backtracks catastrophically runs out of
+ * budget, is logged, and is treated as not matching.
+ *
+ * @author hylke
+ */
+public class PatternSet {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PatternSet.class.getName());
+    private static final String META_CHARS = ".[](){}*+?^$|\\";
+    private static final Pattern BACK_REFERENCE = Pattern.compile(".*\\\\([1-9]|k<).*");
+    /**
+     * The number of characters a single match attempt may inspect, per
+     * character of the input.
+     */
+    public static final int DEFAULT_STEP_BUDGET = 10_000;
+
+    private final Set<String> literals = new HashSet<>();
+    private final PrefixTrie<Pattern> prefixed = new PrefixTrie<>();
+    private final List<String> otherRegexes = new ArrayList<>();
+    private final List<Pattern> separate = new ArrayList<>();
+    private final Map<String, Boolean> verdicts = new ConcurrentHashMap<>();
+    private final int stepBudget;
+    private volatile Pattern combined;
+    private int size;
+
+    public PatternSet() {
+        this(DEFAULT_STEP_BUDGET);
+    }
+
+    public PatternSet(int stepBudget) {
+        this.stepBudget = stepBudget;
+    }
+
+    /**
+     * Adds an expression to the set.
+     *
+     * @param regex The expression to add.
+     * @return this.
+     * @throws java.util.regex.PatternSyntaxException if the expression is
+     * invalid.
+     */
+    public synchronized PatternSet add(String regex) {
+        Pattern pattern = Pattern.compile(regex);
+        LiteralPrefix literal = literalPrefix(regex);
+        if (literal.complete) {
+            literals.add(literal.prefix);
+        } else if (!literal.prefix.isEmpty()) {
+            prefixed.put(literal.prefix, pattern);
+        } else if (BACK_REFERENCE.matcher(regex).matches()) {
+            // Group numbers would shift when combined.
+            separate.add(pattern);
+        } else {
+            otherRegexes.add(regex);
+            combined = combine(otherRegexes);
+        }
+        size++;
+        verdicts.clear();
+        return this;
+    }
+
+    public synchronized PatternSet clear() {
+        literals.clear();
+        prefixed.clear();
+        otherRegexes.clear();
+        separate.clear();
+        verdicts.clear();
+        combined = null;
+        size = 0;
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Checks if the given value fully matches any of the expressions in this
+     * set.
+     *
+     * @param value The value to check.
+     * @return true if any of the expressions matches.
+     */
+    public boolean matches(String value) {
+        if (size == 0) {
+            return false;
+        }
+        return verdicts.computeIfAbsent(value, this::evaluate);
+    }
+
+    private boolean evaluate(String value) {
+        if (literals.contains(value)) {
+            return true;
+        }
+        boolean[] found = {false};
+        prefixed.forEachPrefixOf(value, p -> found[0] = found[0] || matches(p, value));
+        if (found[0]) {
+            return true;
+        }
+        Pattern all = combined;
+        if (all != null && matches(all, value)) {
+            return true;
+        }
+        for (Pattern pattern : separate) {
+            if (matches(pattern, value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean matches(Pattern pattern, String value) {
+        try {
+            return pattern.matcher(new BudgetCharSequence(value, stepBudget * Math.max(1L, value.length()))).matches();
+        } catch (BudgetExceededException ex) {
+            LOGGER.warn("Expression {} ran out of steps on '{}', treating as no match.", pattern, value);
+            return false;
+        }
+    }
+
+    private static Pattern combine(List<String> regexes) {
+        StringBuilder sb = new StringBuilder();
+        for (String regex : regexes) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append("(?:").append(regex).append(')');
+        }
+        return Pattern.compile(sb.toString());
+    }
+
+    /**
+     * Finds the literal text that every match of the given expression starts
+     * with.
+     *
+     * @param regex The expression to analyse.
+     * @return The literal prefix, and whether that is all there is to the
+     * expression.
+     */
+    static LiteralPrefix literalPrefix(String regex) {
+        StringBuilder prefix = new StringBuilder();
+        if (regex.indexOf('|') >= 0) {
+            return new LiteralPrefix(prefix, false);
+        }
+        int length = regex.length();
+        int i = 0;
+        while (i < length) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < length && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                prefix.append(regex.charAt(i + 1));
+                i += 2;
+            } else if (META_CHARS.indexOf(c) >= 0) {
+                if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+                    // The last character is optional or repeated.
+                    prefix.setLength(prefix.length() - 1);
+                }
+                return new LiteralPrefix(prefix, false);
+            } else {
+                prefix.append(c);
+                i++;
+            }
+        }
+        return new LiteralPrefix(prefix, true);
+    }
+
+    static class LiteralPrefix {
+
+        public final String prefix;
+        /**
+         * True if the expression matches nothing but the prefix.
+         */
+        public final boolean complete;
+
+        public LiteralPrefix(CharSequence prefix, boolean complete) {
+            this.prefix = prefix.toString();
+            this.complete = complete;
+        }
+    }
+
+    private static class BudgetExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public BudgetExceededException() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * A CharSequence that throws when it is read too often, to stop runaway
+     * regular expressions.
+     */
+    private static class BudgetCharSequence implements CharSequence {
+
+        private final String value;
+        private long budget;
+
+        public BudgetCharSequence(String value, long budget) {
+            this.value = value;
+            this.budget = budget;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (--budget < 0) {
+                throw new BudgetExceededException();
+            }
+            return value.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return value.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package hylke.dotgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A trie that finds all values whose key is a prefix of a given text, in a
+ * single walk over that text.
+ *
+ * @author hylke
+ * @param <V> The type of the values.
+ */
+public class PrefixTrie<V> {
+
+    private TrieNode<V> root = new TrieNode<>();
+    private int size;
+
+    public PrefixTrie<V> put(String key, V value) {
+        TrieNode<V> node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.getOrCreateChild(key.charAt(i));
+        }
+        if (node.values == null) {
+            node.values = new ArrayList<>(1);
+        }
+        node.values.add(value);
+        size++;
+        return this;
+    }
+
+    /**
+     * Passes all values whose key is a prefix of the given text to the
+     * consumer, shortest keys first.
+     *
+     * @param text The text to find the prefixes of.
+     * @param consumer The consumer to pass the values to.
+     */
+    public void forEachPrefixOf(CharSequence text, Consumer<V> consumer) {
+        TrieNode<V> node = root;
+        int length = text.length();
+        int i = 0;
+        while (node != null) {
+            if (node.values != null) {
+                node.values.forEach(consumer);
+            }
+            if (i >= length) {
+                break;
+            }
+            node = node.getChild(text.charAt(i++));
+        }
+    }
+
+    public PrefixTrie<V> clear() {
+        root = new TrieNode<>();
+        size = 0;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static class TrieNode<V> {
+
+        private char[] keys = new char[0];
+        private TrieNode<V>[] children = newArray(0);
+        private List<V> values;
+
+        @SuppressWarnings("unchecked")
+        private static <V> TrieNode<V>[] newArray(int size) {
+            return (TrieNode<V>[]) new TrieNode<?>[size];
+        }
+
+        public TrieNode<V> getChild(char key) {
+            int idx = Arrays.binarySearch(keys, key);
+            if (idx < 0) {
+                return null;
+            }
+            return children[idx];
+        }
+
+        public TrieNode<V> getOrCreateChild(char key) {
+            int idx = Arrays.binarySearch(keys, key);
+            if (idx >= 0) {
+                return children[idx];
+            }
+            int insert = -idx - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode<V>[] newChildren = newArray(keys.length + 1);
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, keys.length - insert);
+            TrieNode<V> child = new TrieNode<>();
+            newKeys[insert] = key;
+            newChildren[insert] = child;
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package hylke.dotgen;
+
+import hylke.dotgen.html.HtmlTable;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binds the names in the first column of a two-column table to the code that
+ * handles the value in the second column.
+ *
+ * @param <T> The type of the state that is passed to the handlers.
+ * @author hylke
+ */
+public class RowBindings<T> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RowBindings.class.getName());
+
+    /**
+     * Handles the value of a single row.
+     *
+     * @param <T> The type of the state of the table being read.
+     */
+    @FunctionalInterface
+    public static interface RowHandler<T> {
+
+        /**
+         * Handle the raw value cell of a row.
+         *
+         * @param state The state of the table being read.
+         * @param valueCell The raw content of the value cell.
+         * @return false if the rest of the table must be skipped.
+         */
+        public boolean handle(T state, String valueCell);
+    }
+
+    private final String rowName;
+    private final Map<String, RowHandler<T>> handlers = new HashMap<>();
+    private final Set<Integer> quietWidths = new HashSet<>();
+    private boolean headers;
+
+    /**
+     * @param rowName The name of the rows, used in log messages.
+     */
+    public RowBindings(String rowName) {
+        this.rowName = rowName;
+    }
+
+    /**
+     * Binds the given names to a handler. Names are normalised the same way as
+     * the name cells of the table.
+     *
+     * @param handler The handler for rows with one of the given names.
+     * @param names The names.
+     * @return this.
+     */
+    public RowBindings<T> bind(RowHandler<T> handler, String... names) {
+        for (String name : names) {
+            handlers.put(TextNormalizer.get().key(name), handler);
+        }
+        return this;
+    }
+
+    /**
+     * Binds the given names to a setter that gets the cleaned value, with
+     * spaces.
+     *
+     * @param setter The setter for rows with one of the given names.
+     * @param names The names.
+     * @return this.
+     */
+    public RowBindings<T> bindText(BiConsumer<T, String> setter, String... names) {
+        return bind((state, valueCell) -> {
+            setter.accept(state, TextNormalizer.get().clean(valueCell, false));
+            return true;
+        }, names);
+    }
+
+    /**
+     * Binds the given names to a setter that gets the cleaned value, without
+     * spaces.
+     *
+     * @param setter The setter for rows with one of the given names.
+     * @param names The names.
+     * @return this.
+     */
+    public RowBindings<T> bindDefinition(BiConsumer<T, String> setter, String... names) {
+        return bind((state, valueCell) -> {
+            setter.accept(state, TextNormalizer.get().clean(valueCell, true));
+            return true;
+        }, names);
+    }
+
+    /**
+     * Rows with the given number of cells are skipped without an error.
+     *
+     * @param width The number of cells.
+     * @return this.
+     */
+    public RowBindings<T> quietWidth(int width) {
+        quietWidths.add(width);
+        return this;
+    }
+
+    /**
+     * Whether header cells are counted as cells. Only used when a row has no
+     * data cells.
+     *
+     * @param headers the flag.
+     * @return this.
+     */
+    public RowBindings<T> setHeaders(boolean headers) {
+        this.headers = headers;
+        return this;
+    }
+
+    /**
+     * Reads the rows of the given table, starting at the given row.
+     *
+     * @param table The table to read.
+     * @param firstRow The first row to read.
+     * @param state The state passed to the handlers.
+     */
+    public void read(ClassifiedTable table, int firstRow, T state) {
+        HtmlTable html = table.table;
+        TextNormalizer normalizer = TextNormalizer.get();
+        int rowCount = html.getRowCount();
+        for (int i = firstRow; i < rowCount; i++) {
+            List<String> cellList = headers ? html.getRow(i).getCellsOrHeaders() : html.getRow(i).getCells();
+            int cellCount = cellList.size();
+            if (cellCount != 2) {
+                if (quietWidths.contains(cellCount)) {
+                    LOGGER.debug("    {}/{}: {} row found with {} cells, expected 2 ({} ; {})", table.index, i, rowName, cellCount, getCleanCell(cellList, 0), getCleanCell(cellList, 1));
+                } else {
+                    LOGGER.error("    {}/{}: {} row found with {} cells, expected 2 ({} ; {})", table.index, i, rowName, cellCount, getCleanCell(cellList, 0), getCleanCell(cellList, 1));
+                }
+                continue;
+            }
+            String nameCell = cellList.get(0);
+            RowHandler<T> handler = handlers.get(normalizer.key(nameCell));
+            if (handler == null) {
+                LOGGER.warn("    {}/{}: Unknown row: {} - {}", table.index, i, normalizer.clean(nameCell, true), normalizer.clean(cellList.get(1), false));
+            } else if (!handler.handle(state, cellList.get(1))) {
+                return;
+            }
+        }
+    }
+
+    private static String getCleanCell(List<String> cellList, int idx) {
+        if (idx >= cellList.size()) {
+            return "";
+        }
+        return TextNormalizer.get().clean(cellList.get(idx), true);
+    }
+
+}
@@ -0,0 +1,214 @@
+package hylke.dotgen;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the wall time, allocated bytes and entity counts of the phases of
+ * a run, and writes them as a json report.
+ *
+ * Phases are identified by name. A phase can run many times, for instance once
+ * per table or once per artifact, and on multiple threads; the totals of all
+ * runs are kept. Names are dotted, and a phase includes the phases on the same
+ * thread that have its name as prefix. Phases on other threads can overlap in
+ * wall time. Allocated bytes are measured per thread, with the ThreadMXBean
+ * of the JVM, and are only reported when the JVM supports it.
+ *
+ * @author hylke
+ */
+public class RunMetrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RunMetrics.class.getName());
+
+    private static final com.sun.management.ThreadMXBean THREADS = findThreadBean();
+
+    /**
+     * The totals of one phase.
+     */
+    private static class Totals {
+
+        long calls;
+        long nanos;
+        long bytes;
+    }
+
+    /**
+     * A running phase. Closing it adds its wall time and the bytes allocated
+     * by the current thread to the totals of the phase.
+     */
+    public final class Phase implements AutoCloseable {
+
+        private final String name;
+        private final long startNanos;
+        private final long startBytes;
+
+        private Phase(String name) {
+            this.name = name;
+            startBytes = allocatedBytes();
+            startNanos = System.nanoTime();
+        }
+
+        @Override
+        public void close() {
+            long nanos = System.nanoTime() - startNanos;
+            record(name, nanos, allocatedBytes() - startBytes);
+        }
+    }
+
+    private final Instant started = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Map<String, Totals> phases = new LinkedHashMap<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+
+    private static com.sun.management.ThreadMXBean findThreadBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+            if (sunBean.isThreadAllocatedMemorySupported()) {
+                if (!sunBean.isThreadAllocatedMemoryEnabled()) {
+                    sunBean.setThreadAllocatedMemoryEnabled(true);
+                }
+                return sunBean;
+            }
+        }
+        LOGGER.debug("Allocated memory per thread is not supported by this JVM.");
+        return null;
+    }
+
+    /**
+     * @return The number of bytes allocated by the current thread so far, or
+     * 0 if the JVM does not support measuring this.
+     */
+    public static long allocatedBytes() {
+        if (THREADS == null) {
+            return 0;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Starts a phase, to be closed when it is done, preferably with a
+     * try-with-resources. Since the phase is not used in the body, the method
+     * holding it suppresses the "try" lint warning.
+     *
+     * @param name The name of the phase.
+     * @return The running phase.
+     */
+    public Phase start(String name) {
+        return new Phase(name);
+    }
+
+    /**
+     * Wraps the given task so that each run of it is measured as the given
+     * phase, on the thread that runs it.
+     *
+     * @param name The name of the phase.
+     * @param task The task to measure.
+     * @return The measured task.
+     */
+    @SuppressWarnings("try")
+    public Runnable measure(String name, Runnable task) {
+        return () -> {
+            try (Phase phase = start(name)) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * Adds a run of a phase that was measured elsewhere.
+     *
+     * @param name The name of the phase.
+     * @param nanos The wall time of the run, in nanoseconds.
+     * @param bytes The bytes allocated during the run.
+     */
+    public void record(String name, long nanos, long bytes) {
+        synchronized (phases) {
+            Totals totals = phases.computeIfAbsent(name, n -> new Totals());
+            totals.calls++;
+            totals.nanos += nanos;
+            totals.bytes += bytes;
+        }
+    }
+
+    /**
+     * Sets a count, replacing any earlier value.
+     *
+     * @param name The name of the count.
+     * @param value The value.
+     */
+    public void count(String name, long value) {
+        synchronized (counts) {
+            counts.put(name, value);
+        }
+    }
+
+    /**
+     * @return The report, as json.
+     */
+    public JsonObject toJson() {
+        JsonObject json = new JsonObject();
+        json.addProperty("started", started.toString());
+        json.addProperty("wallMillis", millis(System.nanoTime() - startNanos));
+        json.addProperty("allocationMeasured", THREADS != null);
+        JsonObject phasesJson = new JsonObject();
+        synchronized (phases) {
+            for (Map.Entry<String, Totals> entry : phases.entrySet()) {
+                Totals totals = entry.getValue();
+                JsonObject phase = new JsonObject();
+                phase.addProperty("calls", totals.calls);
+                phase.addProperty("wallMillis", millis(totals.nanos));
+                if (THREADS != null) {
+                    phase.addProperty("allocatedBytes", totals.bytes);
+                }
+                phasesJson.add(entry.getKey(), phase);
+            }
+        }
+        json.add("phases", phasesJson);
+        JsonObject countsJson = new JsonObject();
+        synchronized (counts) {
+            for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                countsJson.addProperty(entry.getKey(), entry.getValue());
+            }
+        }
+        json.add("counts", countsJson);
+        return json;
+    }
+
+    private static double millis(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+
+    /**
+     * Writes the report to the given file.
+     *
+     * @param file The file to write to.
+     * @param extra Extra properties to add to the report, like the source and
+     * target of the run.
+     * @throws IOException If writing fails.
+     */
+    public void write(File file, Map<String, String> extra) throws IOException {
+        JsonObject json = new JsonObject();
+        for (Map.Entry<String, String> entry : extra.entrySet()) {
+            json.addProperty(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<String, JsonElement> entry : toJson().entrySet()) {
+            json.add(entry.getKey(), entry.getValue());
+        }
+        Files.createDirectories(file.getAbsoluteFile().toPath().getParent());
+        Files.writeString(file.toPath(), new GsonBuilder().setPrettyPrinting().create().toJson(json), StandardCharsets.UTF_8);
+        LOGGER.info("Wrote run report {}", file);
+    }
+}
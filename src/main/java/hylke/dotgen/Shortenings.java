@@ -0,0 +1,74 @@
+package hylke.dotgen;
+
+import hylke.dotgen.model.ShortenCombo;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies a list of {@link ShortenCombo}s to dependencies, using a prefix
+ * trie to find the combos that apply, instead of trying each in turn.
+ *
+ * The result is the same as applying each combo, in list order, to the result
+ * of the previous one.
+ *
+ * @author hylke
+ */
+public class Shortenings {
+
+    private final PrefixTrie<Integer> starts = new PrefixTrie<>();
+    private final String[] startValues;
+    private final String[] replaceValues;
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+
+    public Shortenings(List<ShortenCombo> combos) {
+        int count = combos == null ? 0 : combos.size();
+        startValues = new String[count];
+        replaceValues = new String[count];
+        for (int i = 0; i < count; i++) {
+            ShortenCombo combo = combos.get(i);
+            startValues[i] = combo.getStart();
+            replaceValues[i] = combo.getReplace();
+            starts.put(combo.getStart(), i);
+        }
+    }
+
+    /**
+     * Applies the shortenings to the given value.
+     *
+     * @param value The value to shorten.
+     * @return The shortened value.
+     */
+    public String apply(String value) {
+        if (starts.isEmpty()) {
+            return value;
+        }
+        return results.computeIfAbsent(value, this::shorten);
+    }
+
+    private String shorten(String value) {
+        int from = 0;
+        while (true) {
+            int next = firstMatch(value, from);
+            if (next < 0) {
+                return value;
+            }
+            value = replaceValues[next] + value.substring(startValues[next].length());
+            from = next + 1;
+        }
+    }
+
+    /**
+     * Finds the first combo, at or after index from, that applies to the
+     * value.
+     */
+    private int firstMatch(String value, int from) {
+        int[] first = {-1};
+        starts.forEachPrefixOf(value, idx -> {
+            if (idx >= from && (first[0] < 0 || idx < first[0])) {
+                first[0] = idx;
+            }
+        });
+        return first[0];
+    }
+}
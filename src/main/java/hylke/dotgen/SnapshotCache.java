@@ -0,0 +1,167 @@
+package hylke.dotgen;
+
+import hylke.dotgen.model.Data;
+import hylke.dotgen.model.DataSnapshot;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores snapshots of parsed documents in a directory, keyed by a hash of the
+ * source bytes, the parser configuration and the build of the tool, so that
+ * snapshots made by an older parser are not used.
+ *
+ * @author hylke
+ */
+public class SnapshotCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotCache.class.getName());
+    private static final String EXTENSION = ".dgs";
+
+    private static String buildId;
+
+    private final File directory;
+
+    public SnapshotCache(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Calculates the key of the given source and parser configuration.
+     *
+     * @param source The source file.
+     * @param parserConfig The configuration of the parser, including its class.
+     * @return The key, as a hex string.
+     * @throws IOException If the source or the build could not be read.
+     */
+    public static String key(File source, String parserConfig) throws IOException {
+        MessageDigest digest = Utils.newSha256();
+        digest.update(("DataSnapshot " + DataSnapshot.VERSION + "\n" + getBuildId() + "\n" + parserConfig + "\n").getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long pos = 0;
+            while (pos < size) {
+                long length = Math.min(size - pos, Integer.MAX_VALUE);
+                digest.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, length));
+                pos += length;
+            }
+        }
+        return Utils.toHex(digest.digest());
+    }
+
+    /**
+     * Identifies the build of the tool: a hash of the jar the classes are
+     * loaded from, or of all files in the class directory when running from
+     * a build tree. Calculated once per JVM.
+     *
+     * @return The build id, as a hex string.
+     * @throws IOException If the classes could not be read.
+     */
+    public static synchronized String getBuildId() throws IOException {
+        if (buildId != null) {
+            return buildId;
+        }
+        MessageDigest digest = Utils.newSha256();
+        Package pkg = SnapshotCache.class.getPackage();
+        digest.update(String.valueOf(pkg == null ? null : pkg.getImplementationVersion()).getBytes(StandardCharsets.UTF_8));
+        CodeSource codeSource = SnapshotCache.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null || codeSource.getLocation() == null) {
+            LOGGER.warn("Location of the classes unknown, snapshots are not tied to the build.");
+        } else {
+            Path location;
+            try {
+                location = Paths.get(codeSource.getLocation().toURI());
+            } catch (URISyntaxException | IllegalArgumentException ex) {
+                throw new IOException("Can not read classes from " + codeSource.getLocation(), ex);
+            }
+            if (Files.isDirectory(location)) {
+                List<Path> files;
+                try (Stream<Path> walk = Files.walk(location)) {
+                    files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+                }
+                for (Path file : files) {
+                    digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                    digest.update(Files.readAllBytes(file));
+                }
+            } else {
+                try (InputStream in = Files.newInputStream(location)) {
+                    byte[] buffer = new byte[64 * 1024];
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        digest.update(buffer, 0, read);
+                    }
+                }
+            }
+        }
+        buildId = Utils.toHex(digest.digest());
+        return buildId;
+    }
+
+    /**
+     * Loads the snapshot with the given key.
+     *
+     * @param key The key of the snapshot.
+     * @return The data, or null if there is no usable snapshot for the key.
+     */
+    public Data load(String key) {
+        File file = new File(directory, key + EXTENSION);
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            Data data = DataSnapshot.read(key, in);
+            if (data == null) {
+                LOGGER.warn("Snapshot {} has a different format or key, ignoring it.", file);
+            }
+            return data;
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Failed to read snapshot {}, ignoring it.", file, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stores a snapshot of the given data under the given key. Failures are
+     * logged, since the snapshot is only an optimisation.
+     *
+     * @param key The key of the snapshot.
+     * @param data The data to store.
+     */
+    public void store(String key, Data data) {
+        File file = new File(directory, key + EXTENSION);
+        try {
+            Files.createDirectories(directory.toPath());
+            Path temp = Files.createTempFile(directory.toPath(), key, ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    DataSnapshot.write(data, key, out);
+                }
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+            LOGGER.info("Stored snapshot {}", file);
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to store snapshot {}", file, ex);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package hylke.dotgen;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xml.sax.SAXException;
+
+/**
+ * Watches the configuration and source file of a Generator. When the source
+ * changes, it is parsed again and only the affected artifacts are written.
+ * When the configuration changes, everything is regenerated.
+ *
+ * @author hylke
+ */
+public class SourceWatcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceWatcher.class.getName());
+    /**
+     * Editors often write a file in several steps. Changes are collected until
+     * nothing happened for this long.
+     */
+    private static final long SETTLE_MILLIS = 100;
+
+    private final File configFile;
+    private Generator generator;
+    private File sourceFile;
+
+    public SourceWatcher(File configFile) {
+        this.configFile = configFile.getAbsoluteFile();
+    }
+
+    /**
+     * Generates everything once, and then watches for changes until
+     * interrupted.
+     *
+     * @throws IOException If the files can not be watched.
+     * @throws InterruptedException When interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        reload();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Set<Path> watchedDirs = new HashSet<>();
+            register(watchService, watchedDirs, configFile);
+            register(watchService, watchedDirs, sourceFile);
+            LOGGER.info("Watching {} and {}", configFile, sourceFile);
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                collect(key, changed);
+                // Wait for the file to settle.
+                while ((key = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    collect(key, changed);
+                }
+                if (changed.contains(configFile.toPath())) {
+                    reload();
+                    register(watchService, watchedDirs, sourceFile);
+                } else if (changed.contains(sourceFile.toPath())) {
+                    update();
+                }
+            }
+        }
+    }
+
+    private static void register(WatchService watchService, Set<Path> watchedDirs, File file) throws IOException {
+        Path dir = file.toPath().getParent();
+        if (watchedDirs.add(dir)) {
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+    }
+
+    /**
+     * Adds the files changed according to the events of the key to the given
+     * set. When events were lost, it is unknown what changed, so both watched
+     * files are counted as changed, forcing a full reload.
+     */
+    private void collect(WatchKey key, Set<Path> changed) {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                LOGGER.warn("Lost file events in {}, reloading everything", dir);
+                changed.add(configFile.toPath());
+                changed.add(sourceFile.toPath());
+                continue;
+            }
+            changed.add(dir.resolve((Path) event.context()));
+        }
+        key.reset();
+    }
+
+    private void reload() {
+        long start = System.nanoTime();
+        try {
+            JsonElement json = JsonParser.parseString(FileUtils.readFileToString(configFile, "UTF-8"));
+            Generator gen = new Generator();
+            gen.configure(json, null, null, null);
+            // A mapped source stays locked on Windows, blocking editor saves.
+            gen.setMapSource(false);
+            gen.process();
+            generator = gen;
+            sourceFile = gen.getSourceFile().getAbsoluteFile();
+            LOGGER.info("Generated everything in {} ms", (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | ConfigurationException | RuntimeException | ParserConfigurationException | SAXException | XPathExpressionException ex) {
+            LOGGER.error("Failed to generate from {}", configFile, ex);
+            if (generator == null) {
+                throw new IllegalStateException("Initial generation failed", ex);
+            }
+        }
+    }
+
+    private void update() {
+        long start = System.nanoTime();
+        try {
+            int written = generator.update();
+            LOGGER.info("Regenerated {} artifacts in {} ms", written, (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException | ParserConfigurationException | SAXException | XPathExpressionException ex) {
+            LOGGER.error("Failed to update from {}", sourceFile, ex);
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package hylke.dotgen;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Generates synthetic specification documents, in the table shapes that
+ * ParserSta and ParserOms recognise, for testing the parsers and the
+ * generator on documents of any size.
+ *
+ * The requirement classes are spread over a number of import levels. Each
+ * class imports classes of the level below it, so the import depth equals the
+ * number of levels. Cycles are made by letting an imported class import the
+ * class back. Each class has its own requirements, recommendations and a
+ * conformance class. In Word mode, the tables are wrapped in the noise of an
+ * MS-Word html export: bookmark spans, MsoNormal paragraphs, o:p elements and
+ * gfxdata blobs.
+ *
+ * The output only depends on the settings, including the seed.
+ *
+ * @author hylke
+ */
+public class SpecGenerator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SpecGenerator.class.getName());
+
+    /**
+     * The shape of the document to generate.
+     */
+    public static enum Style {
+        /**
+         * The html of SensorThings API, for ParserSta.
+         */
+        STA,
+        /**
+         * The Word export of Observations, Measurements and Samples, for
+         * ParserOms.
+         */
+        OMS
+    }
+
+    private static final String STA_NAMESPACE = "http://www.opengis.net/spec/iot_sensing";
+    private static final String[] WORDS = {
+        "entity", "property", "value", "observation", "sample", "feature", "result", "time",
+        "location", "sensor", "datastream", "thing", "request", "response", "server", "client",
+        "model", "attribute", "association", "instance", "collection", "reference", "type", "parameter"
+    };
+    private static final String[] DEPENDENCIES = {
+        "ISO 19103:2015 Conceptual Schema Language",
+        "ISO 19107:2019 Spatial Schema",
+        "OGC 06-103r4 Simple Feature Access",
+        "IETF RFC 3986 Uniform Resource Identifier"
+    };
+    private static final int GFX_LENGTH = 4096;
+
+    private Style style = Style.STA;
+    private boolean word;
+    private int classes = 100;
+    private int requirements = 5;
+    private int recommendations = 1;
+    private int importDepth = 4;
+    private int imports = 2;
+    private int cycles;
+    private int descriptionLength = 200;
+    private long seed = 1;
+
+    private Random random;
+    private int bookmark;
+
+    public Style getStyle() {
+        return style;
+    }
+
+    public SpecGenerator setStyle(Style style) {
+        this.style = style;
+        return this;
+    }
+
+    public boolean isWord() {
+        return word;
+    }
+
+    /**
+     * @param word Add the noise of an MS-Word html export.
+     * @return this.
+     */
+    public SpecGenerator setWord(boolean word) {
+        this.word = word;
+        return this;
+    }
+
+    public int getClasses() {
+        return classes;
+    }
+
+    /**
+     * @param classes The number of requirement classes.
+     * @return this.
+     */
+    public SpecGenerator setClasses(int classes) {
+        this.classes = classes;
+        return this;
+    }
+
+    public int getRequirements() {
+        return requirements;
+    }
+
+    /**
+     * @param requirements The number of requirements per class.
+     * @return this.
+     */
+    public SpecGenerator setRequirements(int requirements) {
+        this.requirements = requirements;
+        return this;
+    }
+
+    public int getRecommendations() {
+        return recommendations;
+    }
+
+    /**
+     * @param recommendations The number of recommendations per class.
+     * @return this.
+     */
+    public SpecGenerator setRecommendations(int recommendations) {
+        this.recommendations = recommendations;
+        return this;
+    }
+
+    public int getImportDepth() {
+        return importDepth;
+    }
+
+    /**
+     * @param importDepth The number of import levels.
+     * @return this.
+     */
+    public SpecGenerator setImportDepth(int importDepth) {
+        this.importDepth = importDepth;
+        return this;
+    }
+
+    public int getImports() {
+        return imports;
+    }
+
+    /**
+     * @param imports The maximum number of imports per class.
+     * @return this.
+     */
+    public SpecGenerator setImports(int imports) {
+        this.imports = imports;
+        return this;
+    }
+
+    public int getCycles() {
+        return cycles;
+    }
+
+    /**
+     * @param cycles The number of import cycles.
+     * @return this.
+     */
+    public SpecGenerator setCycles(int cycles) {
+        this.cycles = cycles;
+        return this;
+    }
+
+    public int getDescriptionLength() {
+        return descriptionLength;
+    }
+
+    /**
+     * @param descriptionLength The approximate length of the requirement
+     * descriptions, in characters.
+     * @return this.
+     */
+    public SpecGenerator setDescriptionLength(int descriptionLength) {
+        this.descriptionLength = descriptionLength;
+        return this;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public SpecGenerator setSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    private String prefix() {
+        return style == Style.STA ? STA_NAMESPACE + "/1.1" : "";
+    }
+
+    private static String className(int index) {
+        return String.format(Locale.ROOT, "class-%05d", index);
+    }
+
+    private String classDefinition(int index) {
+        return prefix() + "/req/" + className(index);
+    }
+
+    private String requirementDefinition(int index, int req) {
+        return classDefinition(index) + "/req-" + req;
+    }
+
+    private static String recommendationDefinition(int index, int rec) {
+        return "/rec/" + className(index) + "/rec-" + rec;
+    }
+
+    private String conformanceDefinition(int index) {
+        return prefix() + "/conf/" + className(index);
+    }
+
+    private int levelOf(int index) {
+        return (int) ((long) index * Math.max(1, importDepth) / classes);
+    }
+
+    /**
+     * Picks the imports of all classes, from the level below each class, and
+     * adds the cycles.
+     */
+    private List<Set<Integer>> createImports() {
+        List<Set<Integer>> result = new ArrayList<>(classes);
+        int levelStart = 0;
+        int previousStart = 0;
+        for (int index = 0; index < classes; index++) {
+            if (index > 0 && levelOf(index) != levelOf(index - 1)) {
+                previousStart = levelStart;
+                levelStart = index;
+            }
+            Set<Integer> classImports = new LinkedHashSet<>();
+            if (levelOf(index) > 0) {
+                int count = 1 + random.nextInt(Math.max(1, imports));
+                for (int i = 0; i < count; i++) {
+                    classImports.add(previousStart + random.nextInt(levelStart - previousStart));
+                }
+            }
+            result.add(classImports);
+        }
+        List<Integer> importing = new ArrayList<>();
+        for (int index = 0; index < classes; index++) {
+            if (!result.get(index).isEmpty()) {
+                importing.add(index);
+            }
+        }
+        for (int i = 0; i < cycles && !importing.isEmpty(); i++) {
+            int index = importing.get(random.nextInt(importing.size()));
+            int imported = result.get(index).iterator().next();
+            result.get(imported).add(index);
+        }
+        return result;
+    }
+
+    /**
+     * Writes the document to the given file.
+     *
+     * @param file The file to write to.
+     * @throws IOException If writing fails.
+     */
+    public void write(File file) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().toPath().getParent());
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.US_ASCII), 64 * 1024)) {
+            write(out);
+        }
+        LOGGER.info("Wrote {} requirement classes with {} requirements to {}", classes, classes * requirements, file);
+    }
+
+    /**
+     * Writes the document to the given writer. Only ASCII is written, other
+     * characters are written as entities.
+     *
+     * @param out The writer to write to.
+     * @throws IOException If writing fails.
+     */
+    public void write(Writer out) throws IOException {
+        random = new Random(seed);
+        bookmark = 0;
+        List<Set<Integer>> allImports = createImports();
+        if (word) {
+            out.append("<html xmlns:v=\"urn:schemas-microsoft-com:vml\" xmlns:o=\"urn:schemas-microsoft-com:office:office\">\n")
+                    .append("<head><meta http-equiv=Content-Type content=\"text/html; charset=windows-1252\">");
+        } else {
+            out.append("<html>\n<head><meta charset=\"UTF-8\">");
+        }
+        out.append("<title>Synthetic ").append(style.name()).append(" specification</title></head>\n<body>\n");
+        int reqNumber = 0;
+        for (int index = 0; index < classes; index++) {
+            paragraph(out, "Requirements class " + className(index));
+            writeClassTable(out, index, allImports.get(index));
+            for (int req = 0; req < requirements; req++) {
+                writeRequirementTable(out, index, req, ++reqNumber);
+            }
+            for (int rec = 0; rec < recommendations; rec++) {
+                writeTable(out, new String[][]{{recommendationDefinition(index, rec), description()}});
+            }
+        }
+        for (int index = 0; index < classes; index++) {
+            writeTable(out, new String[][]{
+                {"Conformance Class", conformanceDefinition(index)},
+                {"Test purpose", "Verify that the " + className(index) + " requirements are met."},
+                {"Test method", "Inspect the documentation of the implementation."},
+                {"Test type", "Capabilities"},
+                {"Requirements", classDefinition(index)}
+            });
+        }
+        out.append("</body>\n</html>\n");
+    }
+
+    private void writeClassTable(Writer out, int index, Set<Integer> classImports) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        if (style == Style.STA) {
+            rows.add(new String[]{classDefinition(index)});
+        } else {
+            rows.add(new String[]{"Requirements class", classDefinition(index)});
+        }
+        rows.add(new String[]{"Target type", "Synthetic module"});
+        rows.add(new String[]{"Name", "Synthetic " + words(2)});
+        rows.add(new String[]{"Dependency", DEPENDENCIES[random.nextInt(DEPENDENCIES.length)]});
+        for (int imported : classImports) {
+            rows.add(new String[]{"Imports", classDefinition(imported)});
+        }
+        for (int req = 0; req < requirements; req++) {
+            rows.add(new String[]{"Requirement", requirementDefinition(index, req)});
+        }
+        for (int rec = 0; rec < recommendations; rec++) {
+            rows.add(new String[]{"Recommendation", recommendationDefinition(index, rec)});
+        }
+        if (style == Style.STA) {
+            writeTable(out, "Requirements Class", rows.toArray(new String[rows.size()][]));
+        } else {
+            writeTable(out, rows.toArray(new String[rows.size()][]));
+        }
+    }
+
+    private void writeRequirementTable(Writer out, int index, int req, int number) throws IOException {
+        String definition = requirementDefinition(index, req);
+        if (style == Style.STA) {
+            writeTable(out, new String[][]{
+                {"Req " + number + ": " + className(index) + "-" + req},
+                {description()},
+                {definition}
+            });
+        } else {
+            writeTable(out, new String[][]{{"Requirement " + definition, description()}});
+        }
+    }
+
+    private void writeTable(Writer out, String[]... rows) throws IOException {
+        writeTable(out, null, rows);
+    }
+
+    private void writeTable(Writer out, String header, String[]... rows) throws IOException {
+        if (word) {
+            gfxData(out);
+            out.append("<table class=MsoTableGrid border=1 cellspacing=0 cellpadding=0 style='border-collapse:collapse;mso-table-layout-alt:fixed'>\n");
+        } else {
+            out.append("<table>\n");
+        }
+        if (header != null) {
+            out.append("<tr><th>");
+            cellContent(out, header);
+            out.append("</th></tr>\n");
+        }
+        for (String[] row : rows) {
+            out.append("<tr>");
+            for (String cell : row) {
+                out.append(word ? "<td width=300 valign=top style='padding:0cm 5.4pt 0cm 5.4pt'>" : "<td>");
+                cellContent(out, cell);
+                out.append("</td>");
+            }
+            out.append("</tr>\n");
+        }
+        out.append("</table>\n");
+    }
+
+    private void cellContent(Writer out, String text) throws IOException {
+        if (!word) {
+            escape(out, text);
+            return;
+        }
+        out.append("<p class=MsoNormal style='margin-bottom:0cm;line-height:normal'>");
+        int id = ++bookmark;
+        out.append("<span style='mso-bookmark:_Toc").append(String.valueOf(id)).append("'></span>")
+                .append("<span lang=EN-US style='font-size:10.0pt;mso-ansi-language:EN-US'>");
+        escape(out, text);
+        out.append("<o:p></o:p></span></p>");
+    }
+
+    private void paragraph(Writer out, String text) throws IOException {
+        if (word) {
+            out.append("<h2><span style='mso-bookmark:_Toc").append(String.valueOf(++bookmark)).append("'>");
+            escape(out, text);
+            out.append("</span><o:p></o:p></h2>\n");
+        } else {
+            out.append("<h2>");
+            escape(out, text);
+            out.append("</h2>\n");
+        }
+    }
+
+    /**
+     * Writes a vml shape with a base64 blob, like Word does for each image.
+     */
+    private void gfxData(Writer out) throws IOException {
+        final String base64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        out.append("<p class=MsoNormal><v:shape id=\"_x0000_i").append(String.valueOf(++bookmark))
+                .append("\" type=\"#_x0000_t75\" style='width:1pt;height:1pt' o:gfxdata=\"");
+        for (int i = 0; i < GFX_LENGTH; i++) {
+            out.append(base64.charAt(random.nextInt(base64.length())));
+        }
+        out.append("\"></v:shape><o:p></o:p></p>\n");
+    }
+
+    private static void escape(Writer out, String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    out.append("&amp;");
+                    break;
+                case '<':
+                    out.append("&lt;");
+                    break;
+                case '>':
+                    out.append("&gt;");
+                    break;
+                case '“':
+                    out.append("&ldquo;");
+                    break;
+                case '”':
+                    out.append("&rdquo;");
+                    break;
+                default:
+                    if (c > 127) {
+                        out.append("&#").append(String.valueOf((int) c)).append(';');
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+    }
+
+    private String words(int count) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return result.toString();
+    }
+
+    private String description() {
+        StringBuilder result = new StringBuilder("Each ");
+        result.append(words(1)).append(" SHALL have a ");
+        while (result.length() < descriptionLength) {
+            result.append(' ');
+            if (random.nextInt(40) == 0) {
+                result.append('“').append(words(1)).append('”');
+            } else {
+                result.append(words(1));
+            }
+        }
+        return result.append('.').toString();
+    }
+
+    /**
+     * Creates a generator configuration for a generated document.
+     *
+     * @param source The generated document.
+     * @param target The target prefix of the generated artifacts.
+     * @return The configuration.
+     */
+    public JsonObject createConfig(File source, String target) {
+        JsonObject classConfig = new JsonObject();
+        classConfig.addProperty("nameSpace", style == Style.STA ? STA_NAMESPACE : "");
+        classConfig.add("ignoreReqRegexes", new JsonArray());
+        classConfig.add("ignoreDepRegexes", new JsonArray());
+        JsonObject parser = new JsonObject();
+        parser.addProperty("className", style == Style.STA ? ParserSta.class.getName() : ParserOms.class.getName());
+        parser.add("classConfig", classConfig);
+        JsonObject config = new JsonObject();
+        config.add("parser", parser);
+        config.addProperty("source", source.getAbsolutePath());
+        config.addProperty("target", target);
+        return config;
+    }
+
+    /**
+     * Writes the document, and a generator configuration next to it, with the
+     * same name and the extension json.
+     *
+     * @param file The document to write.
+     * @return The configuration file.
+     * @throws IOException If writing fails.
+     */
+    public File writeWithConfig(File file) throws IOException {
+        write(file);
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        File configFile = new File(file.getAbsoluteFile().getParentFile(), baseName + ".json");
+        String target = new File(file.getAbsoluteFile().getParentFile(), baseName + "/" + baseName).getPath();
+        String json = new GsonBuilder().setPrettyPrinting().create().toJson(createConfig(file, target));
+        Files.writeString(configFile.toPath(), json, StandardCharsets.UTF_8);
+        return configFile;
+    }
+
+    public static void main(String[] args) throws IOException {
+        SpecGenerator generator = new SpecGenerator();
+        File output = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            boolean hasValue = i + 1 < args.length;
+            if ("--word".equals(arg)) {
+                generator.setWord(true);
+            } else if ("--style".equals(arg) && hasValue) {
+                generator.setStyle(Style.valueOf(args[++i].toUpperCase(Locale.ROOT)));
+            } else if ("--classes".equals(arg) && hasValue) {
+                generator.setClasses(Integer.parseInt(args[++i]));
+            } else if ("--requirements".equals(arg) && hasValue) {
+                generator.setRequirements(Integer.parseInt(args[++i]));
+            } else if ("--recommendations".equals(arg) && hasValue) {
+                generator.setRecommendations(Integer.parseInt(args[++i]));
+            } else if ("--depth".equals(arg) && hasValue) {
+                generator.setImportDepth(Integer.parseInt(args[++i]));
+            } else if ("--imports".equals(arg) && hasValue) {
+                generator.setImports(Integer.parseInt(args[++i]));
+            } else if ("--cycles".equals(arg) && hasValue) {
+                generator.setCycles(Integer.parseInt(args[++i]));
+            } else if ("--description".equals(arg) && hasValue) {
+                generator.setDescriptionLength(Integer.parseInt(args[++i]));
+            } else if ("--seed".equals(arg) && hasValue) {
+                generator.setSeed(Long.parseLong(args[++i]));
+            } else if (output == null && !arg.startsWith("--")) {
+                output = new File(arg);
+            } else {
+                output = null;
+                break;
+            }
+        }
+        if (output == null) {
+            LOGGER.warn("Usage: SpecGenerator [--style sta|oms] [--word] [--classes n] [--requirements n] [--recommendations n]");
+            LOGGER.warn("                     [--depth n] [--imports n] [--cycles n] [--description chars] [--seed n] output.html");
+            return;
+        }
+        File config = generator.writeWithConfig(output);
+        LOGGER.info("Wrote configuration {}", config);
+    }
+}
@@ -0,0 +1,134 @@
+package hylke.dotgen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Decides the type of a table from the cleaned content of its first cell.
+ *
+ * Labels that are known exactly are found with a hash lookup. Only labels that
+ * are not known exactly are tried against the prefix and pattern rules, in the
+ * order the rules were added.
+ *
+ * @author hylke
+ */
+public class TableClassifier {
+
+    private final Map<String, TableType> exact = new HashMap<>();
+    private final Map<String, TableType> exactIgnoreCase = new HashMap<>();
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Adds labels that must match exactly.
+     *
+     * @param type The type of tables with one of the given labels.
+     * @param labels The labels.
+     * @return this.
+     */
+    public TableClassifier exact(TableType type, String... labels) {
+        for (String label : labels) {
+            exact.put(label, type);
+        }
+        return this;
+    }
+
+    /**
+     * Adds labels that must match, ignoring case.
+     *
+     * @param type The type of tables with one of the given labels.
+     * @param labels The labels.
+     * @return this.
+     */
+    public TableClassifier exactIgnoreCase(TableType type, String... labels) {
+        for (String label : labels) {
+            exactIgnoreCase.put(label.toLowerCase(Locale.ROOT), type);
+        }
+        return this;
+    }
+
+    /**
+     * Adds a rule for labels that start with one of the given prefixes.
+     *
+     * @param type The type of matching tables.
+     * @param rowCount The number of rows a matching table must have, or 0 for
+     * any number of rows.
+     * @param prefixes The prefixes.
+     * @return this.
+     */
+    public TableClassifier prefix(TableType type, int rowCount, String... prefixes) {
+        rules.add(new Rule(type, rowCount, null, prefixes));
+        return this;
+    }
+
+    /**
+     * Adds a rule for labels that completely match the given pattern.
+     *
+     * @param type The type of matching tables.
+     * @param pattern The pattern.
+     * @return this.
+     */
+    public TableClassifier pattern(TableType type, Pattern pattern) {
+        rules.add(new Rule(type, 0, pattern, new String[0]));
+        return this;
+    }
+
+    /**
+     * Classifies a table.
+     *
+     * @param label The cleaned content of the first cell of the table.
+     * @param rowCount The number of rows of the table.
+     * @return The type of the table, UNKNOWN if nothing matches.
+     */
+    public TableType classify(String label, int rowCount) {
+        TableType type = exact.get(label);
+        if (type != null) {
+            return type;
+        }
+        if (!exactIgnoreCase.isEmpty()) {
+            type = exactIgnoreCase.get(label.toLowerCase(Locale.ROOT));
+            if (type != null) {
+                return type;
+            }
+        }
+        for (Rule rule : rules) {
+            if (rule.matches(label, rowCount)) {
+                return rule.type;
+            }
+        }
+        return TableType.UNKNOWN;
+    }
+
+    private static class Rule {
+
+        private final TableType type;
+        private final int rowCount;
+        private final Pattern pattern;
+        private final String[] prefixes;
+
+        public Rule(TableType type, int rowCount, Pattern pattern, String[] prefixes) {
+            this.type = type;
+            this.rowCount = rowCount;
+            this.pattern = pattern;
+            this.prefixes = prefixes;
+        }
+
+        public boolean matches(String label, int rows) {
+            if (rowCount > 0 && rows != rowCount) {
+                return false;
+            }
+            if (pattern != null) {
+                return pattern.matcher(label).matches();
+            }
+            for (String prefix : prefixes) {
+                if (label.startsWith(prefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package hylke.dotgen;
+
+import hylke.dotgen.html.DomTables;
+import hylke.dotgen.html.HtmlTable;
+import hylke.dotgen.html.StaxTableReader;
+import hylke.dotgen.jfr.TableEvent;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+/**
+ * Reads the tables of a document, classifies them and passes each table to the
+ * handler registered for its type.
+ *
+ * Handlers are called on the calling thread, in document order, unless tables
+ * are read in parallel. Then tables are read, classified and handled on a
+ * fork-join pool, and the handlers and listener must be thread-safe.
+ *
+ * @author hylke
+ */
+public class TableEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableEngine.class.getName());
+
+    /**
+     * Handles a classified table.
+     */
+    @FunctionalInterface
+    public static interface TableHandler {
+
+        public void handle(ClassifiedTable table);
+    }
+
+    /**
+     * Is told about each table before and after it is handled.
+     */
+    public static interface TableListener {
+
+        public void beforeTable(ClassifiedTable table);
+
+        public void afterTable(ClassifiedTable table);
+    }
+
+    private final TableClassifier classifier;
+    private final Map<TableType, TableHandler> handlers = new EnumMap<>(TableType.class);
+    private boolean headers;
+    private RunMetrics metrics = new RunMetrics();
+    private TableListener listener;
+
+    /**
+     * Creates an engine that logs empty and unknown tables, and skips ignored
+     * tables.
+     *
+     * @param classifier The classifier to use.
+     */
+    public TableEngine(TableClassifier classifier) {
+        this.classifier = classifier;
+        register(TableType.EMPTY, t -> LOGGER.warn("    {}: Empty first row, {} rows", t.index, t.table.getRowCount()));
+        register(TableType.UNKNOWN, t -> LOGGER.warn("    {}: Unknown table type: {}, {} rows", t.index, t.label, t.table.getRowCount()));
+        register(TableType.IGNORED, t -> {
+        });
+    }
+
+    /**
+     * Registers the handler for the given type, replacing any existing handler.
+     *
+     * @param type The type of table to handle.
+     * @param handler The handler.
+     * @return this.
+     */
+    public TableEngine register(TableType type, TableHandler handler) {
+        handlers.put(type, handler);
+        return this;
+    }
+
+    /**
+     * Whether header cells in the first row are used for classification when
+     * the first row has no data cells.
+     *
+     * @param headers the flag.
+     * @return this.
+     */
+    public TableEngine setHeaders(boolean headers) {
+        this.headers = headers;
+        return this;
+    }
+
+    /**
+     * Sets the metrics to record the classification and handling of tables
+     * in.
+     *
+     * @param metrics The metrics of the current run.
+     * @return this.
+     */
+    public TableEngine setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Sets the listener that is told about each table that is handled.
+     *
+     * @param listener The listener, or null.
+     * @return this.
+     */
+    public TableEngine setListener(TableListener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    @SuppressWarnings("try")
+    public ClassifiedTable classify(int index, HtmlTable table) {
+        try (RunMetrics.Phase phase = metrics.start("parse.tables.classify")) {
+            return classifyTable(index, table);
+        }
+    }
+
+    private ClassifiedTable classifyTable(int index, HtmlTable table) {
+        int rowCount = table.getRowCount();
+        List<String> cellList;
+        if (rowCount == 0) {
+            cellList = Collections.emptyList();
+        } else {
+            cellList = headers ? table.getRow(0).getCellsOrHeaders() : table.getRow(0).getCells();
+        }
+        int colCount = cellList.size();
+        if (colCount == 0) {
+            return new ClassifiedTable(index, table, TableType.EMPTY, "");
+        }
+        String label = TextNormalizer.get().clean(cellList.get(0), true);
+        LOGGER.debug("  Rows: {}, Cols: {}, Type: '{}'", rowCount, colCount, label);
+        return new ClassifiedTable(index, table, classifier.classify(label, rowCount), label);
+    }
+
+    @SuppressWarnings("try")
+    public void handle(ClassifiedTable table) {
+        TableHandler handler = handlers.get(table.type);
+        if (handler == null) {
+            handler = handlers.get(TableType.UNKNOWN);
+        }
+        TableEvent event = new TableEvent();
+        event.begin();
+        if (listener != null) {
+            listener.beforeTable(table);
+        }
+        boolean failed = true;
+        try {
+            try (RunMetrics.Phase phase = metrics.start("parse.tables." + table.type.name().toLowerCase())) {
+                handler.handle(table);
+            }
+            failed = false;
+        } finally {
+            // Also end the table when the handler failed, so the listener can
+            // clean up and the failed table shows up in the recording.
+            try {
+                if (listener != null) {
+                    listener.afterTable(table);
+                }
+            } finally {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.index = table.index;
+                    event.type = table.type.name();
+                    event.label = table.label;
+                    event.rowCount = table.table.getRowCount();
+                    event.failed = failed;
+                    event.commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles all tables in the given document.
+     *
+     * @param doc The document to read the tables from.
+     * @param parallel Whether to read, classify and handle tables in
+     * parallel.
+     * @param threads The number of threads to use in parallel mode, 0 for one
+     * per processor.
+     * @return The number of tables.
+     * @throws IOException If reading the tables failed.
+     */
+    public int readDom(Document doc, boolean parallel, int threads) throws IOException {
+        List<Node> tables = DomTables.findTables(doc);
+        int total = tables.size();
+        LOGGER.info("Found {} tables.", total);
+        metrics.count("tables", total);
+        if (parallel) {
+            LOGGER.info("Reading tables in parallel...");
+            DomTables.readTables(tables, threads, (index, table) -> {
+                ClassifiedTable classified = classify(index, table);
+                handle(classified);
+                return classified;
+            });
+        } else {
+            for (int i = 0; i < total; i++) {
+                handle(classify(i, DomTables.readTable(tables.get(i))));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Handles all tables in the given XML stream, as they are read.
+     *
+     * @param reader The XML to read the tables from.
+     * @return The number of tables.
+     * @throws IOException If reading the tables failed.
+     */
+    public int readStream(Reader reader) throws IOException {
+        int[] index = {0};
+        int total = new StaxTableReader().readTables(reader, t -> handle(classify(index[0]++, t)));
+        LOGGER.info("Found {} tables.", total);
+        metrics.count("tables", total);
+        return total;
+    }
+}
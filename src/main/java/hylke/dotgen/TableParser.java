@@ -0,0 +1,439 @@
+package hylke.dotgen;
+
+import com.google.gson.JsonElement;
+import de.fraunhofer.iosb.ilt.configurable.ConfigEditor;
+import de.fraunhofer.iosb.ilt.configurable.ConfigurationException;
+import de.fraunhofer.iosb.ilt.configurable.annotations.ConfigurableField;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorBoolean;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorInt;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorList;
+import de.fraunhofer.iosb.ilt.configurable.editor.EditorString;
+import hylke.dotgen.html.HtmlTable;
+import hylke.dotgen.html.SerializingReader;
+import hylke.dotgen.html.SourceDocument;
+import hylke.dotgen.html.XmlResources;
+import hylke.dotgen.jfr.EntityLookupEvent;
+import hylke.dotgen.model.ConformanceClass;
+import hylke.dotgen.model.Data;
+import hylke.dotgen.model.Image;
+import hylke.dotgen.model.Recommendation;
+import hylke.dotgen.model.Requerement;
+import hylke.dotgen.model.RequerementClass;
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import org.htmlcleaner.HtmlCleaner;
+import org.htmlcleaner.Serializer;
+import org.htmlcleaner.TagNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * The parts shared by the parsers that read requirements from the tables of an
+ * html document. Subclasses clean their document type and register the
+ * handlers for the table types they know in a {@link TableEngine}.
+ *
+ * @author hylke
+ */
+public abstract class TableParser implements Parser {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TableParser.class.getName());
+
+    @ConfigurableField(editor = EditorString.class, label = "namespace", description = "Namespace is removed from definitions.")
+    @EditorString.EdOptsString()
+    protected String nameSpace;
+
+    @ConfigurableField(editor = EditorList.class, label = "IgnoreReqs", description = "Regexes to requirements to ignore.")
+    @EditorList.EdOptsList(editor = EditorString.class)
+    @EditorString.EdOptsString()
+    private List<String> ignoreReqRegexes;
+
+    @ConfigurableField(editor = EditorList.class, label = "IgnoreDeps", description = "Regexes to dependencies to ignore.")
+    @EditorList.EdOptsList(editor = EditorString.class)
+    @EditorString.EdOptsString()
+    private List<String> ignoreDepRegexes;
+
+    @ConfigurableField(editor = EditorString.class, optional = true,
+            label = "Charset", description = "The charset of the source. If empty, it is taken from the byte order mark or meta tag, or the default of the parser.")
+    @EditorString.EdOptsString()
+    private String charset;
+
+    @ConfigurableField(editor = EditorBoolean.class, optional = true,
+            label = "Parallel", description = "Read, classify and handle tables on multiple threads.")
+    @EditorBoolean.EdOptsBool()
+    private boolean parallel;
+
+    @ConfigurableField(editor = EditorInt.class, optional = true,
+            label = "Threads", description = "The number of threads to use in parallel mode, 0 for one per processor.")
+    @EditorInt.EdOptsInt(dflt = 0, min = 0, max = 1024, step = 1)
+    private int threads;
+
+    protected final PatternSet ignoreReqs = new PatternSet();
+    protected final PatternSet ignoreDeps = new PatternSet();
+
+    protected final Set<String> ignoredDeps = ConcurrentHashMap.newKeySet();
+
+    protected final RowBindings<TableState> conformanceRows = new RowBindings<TableState>("Conformance")
+            .bind(this::createConformanceClass, "conformanceclass")
+            .bindText((s, v) -> change(s.confClass, c -> c.purpose = v), "testpurpose")
+            .bindText((s, v) -> change(s.confClass, c -> c.method = v), "testmethod")
+            .bindText((s, v) -> change(s.confClass, c -> c.type = v), "testtype")
+            .bindDefinition(this::linkConformanceRequirement, "requirements");
+
+    protected Data documentData;
+
+    private boolean mapSource = true;
+    private int maxThreads;
+
+    protected RunMetrics metrics = new RunMetrics();
+
+    private TableEngine engine;
+
+    /**
+     * The lookups of the table that is being handled on each thread, for
+     * profiling.
+     */
+    private final ThreadLocal<EntityLookupEvent> lookupEvent = new ThreadLocal<>();
+    /**
+     * The deferred changes of the tables handled in parallel.
+     */
+    private final Queue<Data.TableChanges> tableChanges = new ConcurrentLinkedQueue<>();
+    /**
+     * Whether tables are being handled in parallel, with deferred changes.
+     */
+    private volatile boolean deferChanges;
+
+    /**
+     * The state of the table that is being read.
+     */
+    protected static class TableState {
+
+        public RequerementClass reqClass;
+        public ConformanceClass confClass;
+        public final Set<Image> mainImages = Image.emptySet();
+    }
+
+    /**
+     * Creates the engine with the classifier and table handlers of this
+     * parser.
+     *
+     * @return the engine.
+     */
+    protected abstract TableEngine createEngine();
+
+    /**
+     * @return The charset to use when the source does not specify one.
+     */
+    protected abstract Charset getDefaultCharset();
+
+    @Override
+    public Data getDocumentData() {
+        return documentData;
+    }
+
+    @Override
+    public TableParser reset() {
+        documentData = new Data(nameSpace);
+        ignoredDeps.clear();
+        return this;
+    }
+
+    @Override
+    public void configure(JsonElement config, Void context, Void edtCtx, ConfigEditor<?> configEditor) throws ConfigurationException {
+        Parser.super.configure(config, context, edtCtx, configEditor);
+        documentData = new Data(nameSpace);
+        ignoreReqRegexes.stream().forEach(t -> addIgnoreReq(t));
+        ignoreDepRegexes.stream().forEach(t -> addIgnoreDep(t));
+    }
+
+    @Override
+    public TableParser setMetrics(RunMetrics metrics) {
+        this.metrics = metrics;
+        getEngine().setMetrics(metrics);
+        return this;
+    }
+
+    @Override
+    public TableParser setMapSource(boolean mapSource) {
+        this.mapSource = mapSource;
+        return this;
+    }
+
+    @Override
+    public TableParser setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    public TableParser addIgnoreReq(String regex) {
+        ignoreReqs.add(regex);
+        return this;
+    }
+
+    public TableParser addIgnoreDep(String regex) {
+        ignoreDeps.add(regex);
+        return this;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public TableParser setParallel(boolean parallel, int threads) {
+        this.parallel = parallel;
+        this.threads = threads;
+        return this;
+    }
+
+    protected TableEngine getEngine() {
+        if (engine == null) {
+            engine = createEngine()
+                    .setMetrics(metrics)
+                    .setListener(new TableEngine.TableListener() {
+                        @Override
+                        public void beforeTable(ClassifiedTable table) {
+                            startTable(table);
+                        }
+
+                        @Override
+                        public void afterTable(ClassifiedTable table) {
+                            endTable(table);
+                        }
+                    });
+        }
+        return engine;
+    }
+
+    /**
+     * Starts a table in the data, deferred when tables are handled in
+     * parallel, so the changes can be applied in table order afterwards.
+     */
+    private void startTable(ClassifiedTable table) {
+        documentData.startTable(table.index, deferChanges);
+        EntityLookupEvent event = new EntityLookupEvent();
+        if (event.isEnabled()) {
+            event.begin();
+            lookupEvent.set(event);
+        }
+    }
+
+    private void endTable(ClassifiedTable table) {
+        Data.TableChanges changes = documentData.endTable();
+        if (deferChanges) {
+            tableChanges.add(changes);
+        }
+        EntityLookupEvent event = lookupEvent.get();
+        lookupEvent.remove();
+        if (event == null) {
+            return;
+        }
+        event.end();
+        if (changes.getLookups() > 0 && event.shouldCommit()) {
+            event.tableIndex = table.index;
+            event.tableType = table.type.name();
+            event.lookups = changes.getLookups();
+            event.created = changes.getCreated();
+            event.commit();
+        }
+    }
+
+    protected SourceDocument openSource(File sourceFile) throws IOException {
+        if (mapSource) {
+            return SourceDocument.open(sourceFile, charset, getDefaultCharset());
+        }
+        return SourceDocument.read(sourceFile, charset, getDefaultCharset());
+    }
+
+    /**
+     * Builds a DOM from the given clean xml and handles all its tables.
+     *
+     * @param cleanXml The clean xml to parse.
+     * @throws IOException If reading failed.
+     * @throws ParserConfigurationException If no DocumentBuilder could be
+     * made.
+     * @throws SAXException If the xml could not be parsed.
+     */
+    @SuppressWarnings("try")
+    protected void parseDom(Reader cleanXml) throws IOException, ParserConfigurationException, SAXException {
+        DocumentBuilder builder = XmlResources.getDocumentBuilder(!parallel);
+        LOGGER.info("Parsing input...");
+        Document doc;
+        try (RunMetrics.Phase phase = metrics.start("parse.dom")) {
+            doc = builder.parse(new InputSource(cleanXml));
+        }
+        tableChanges.clear();
+        deferChanges = parallel;
+        try {
+            int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            if (maxThreads > 0) {
+                poolSize = Math.min(poolSize, maxThreads);
+            }
+            getEngine().readDom(doc, parallel, poolSize);
+        } finally {
+            deferChanges = false;
+        }
+        if (parallel) {
+            documentData.applyChanges(tableChanges);
+            tableChanges.clear();
+        }
+    }
+
+    /**
+     * Cleans the given html with HtmlCleaner, measured as the clean phase.
+     *
+     * @param cleaner The cleaner to use.
+     * @param dirty The html to clean.
+     * @return The cleaned tree.
+     * @throws IOException If reading fails.
+     */
+    @SuppressWarnings("try")
+    protected TagNode clean(HtmlCleaner cleaner, Reader dirty) throws IOException {
+        try (RunMetrics.Phase phase = metrics.start("parse.clean")) {
+            return cleaner.clean(dirty);
+        }
+    }
+
+    /**
+     * Serialises the given cleaned tree on a background thread, measured as
+     * the serialize phase.
+     *
+     * @param clean The cleaned tree.
+     * @param serializer The serializer to use.
+     * @return A reader on the serialised tree.
+     * @throws IOException If the reader could not be made.
+     */
+    protected Reader serialize(TagNode clean, Serializer serializer) throws IOException {
+        return new SerializingReader(clean, serializer, work -> metrics.measure("parse.serialize", work));
+    }
+
+    /**
+     * Records the counts of the parsed entities.
+     */
+    protected void countEntities() {
+        metrics.count("requirementClasses", documentData.getRequirementClasses().size());
+        metrics.count("requirements", documentData.getRequirements().size());
+        metrics.count("recommendations", documentData.getRecommendations().size());
+        metrics.count("conformanceClasses", documentData.getConformanceClasses().size());
+        metrics.count("ignoredDependencies", ignoredDeps.size());
+    }
+
+    protected void logIgnoredDeps() {
+        LOGGER.info("Ignored Dependencies:");
+        for (String ignoredDep : ignoredDeps) {
+            LOGGER.info("  '{}'", ignoredDep);
+        }
+    }
+
+    protected void parseConformanceClassTable(ClassifiedTable table) {
+        conformanceRows.read(table, 0, new TableState());
+    }
+
+    private boolean createConformanceClass(TableState state, String valueCell) {
+        String value = cleanContent(valueCell, true);
+        if (ignoreReqs.matches(value)) {
+            return false;
+        }
+        state.confClass = documentData.findOrCreateConformanceClass(value);
+        return true;
+    }
+
+    private void linkConformanceRequirement(TableState state, String value) {
+        if (ignoreReqs.matches(value)) {
+            return;
+        }
+        RequerementClass req = documentData.findOrCreateRequirementClass(value);
+        change(state.confClass, c -> c.addRequirement(req));
+    }
+
+    protected void parseRecommendationTable(ClassifiedTable table) {
+        HtmlTable html = table.table;
+        int rowCount = html.getRowCount();
+        if (rowCount > 1) {
+            LOGGER.warn("Recommendation Table with multiple rows found");
+        }
+        for (int i = 0; i < rowCount; i++) {
+            List<String> cellList = html.getRow(i).getCells();
+            int cellCount = cellList.size();
+            if (cellCount != 2) {
+                LOGGER.error("Recommendation row found with {} cells, expected 2", cellCount);
+                continue;
+            }
+            String def = cleanContent(cellList.get(0), true);
+            if (def.startsWith("Recommendation")) {
+                def = def.substring("Recommendation".length());
+            }
+            if (ignoreReqs.matches(def)) {
+                continue;
+            }
+            String desc = cleanContent(cellList.get(1), false);
+            Recommendation rec = documentData.findOrCreateRecommendation(def);
+            String recDef = def;
+            documentData.change(() -> {
+                if (!rec.description.isEmpty()) {
+                    LOGGER.warn("Recommendation {} already has a description: {}", recDef, rec.description);
+                }
+                rec.description = desc;
+            });
+        }
+    }
+
+    protected void linkRequirement(TableState state, String value) {
+        if (ignoreReqs.matches(value)) {
+            return;
+        }
+        Requerement req = documentData.findOrCreateRequirement(value);
+        change(state.reqClass, c -> {
+            c.addRequirement(req);
+            req.inClass.add(c);
+        });
+        documentData.checkImageForRelation(value, state.mainImages);
+    }
+
+    protected void linkImport(TableState state, String value) {
+        if (ignoreReqs.matches(value)) {
+            return;
+        }
+        RequerementClass importedReq = documentData.findOrCreateRequirementClass(value);
+        change(state.reqClass, c -> c.addImport(importedReq));
+        documentData.checkImageForRelation(importedReq.definition, state.mainImages);
+    }
+
+    protected void linkRecommendation(TableState state, String value) {
+        if (ignoreReqs.matches(value)) {
+            return;
+        }
+        Recommendation rec = documentData.findOrCreateRecommendation(value);
+        change(state.reqClass, c -> c.addRecommendation(rec));
+        documentData.checkImageForRelation(value, state.mainImages);
+    }
+
+    /**
+     * Changes the given entity, in table order, see {@link Data#change}.
+     *
+     * @param <T> The type of the entity.
+     * @param target The entity to change, must not be null.
+     * @param change The change.
+     */
+    protected <T> void change(T target, Consumer<T> change) {
+        Objects.requireNonNull(target);
+        documentData.change(() -> change.accept(target));
+    }
+
+    protected String cleanContent(String data, boolean noSpaces) {
+        return TextNormalizer.get().clean(data, noSpaces);
+    }
+
+}
@@ -0,0 +1,16 @@
+package hylke.dotgen;
+
+/**
+ * The kinds of tables the parsers recognise.
+ *
+ * @author hylke
+ */
+public enum TableType {
+    REQUIREMENTS_CLASS,
+    CONFORMANCE_CLASS,
+    REQUIREMENT,
+    RECOMMENDATION,
+    IGNORED,
+    EMPTY,
+    UNKNOWN
+}
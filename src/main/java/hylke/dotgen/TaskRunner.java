@@ -0,0 +1,109 @@
+package hylke.dotgen;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs independent tasks on a bounded pool of threads. All tasks are run, also
+ * when some of them fail, and all failures are reported together.
+ *
+ * @author hylke
+ */
+public class TaskRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TaskRunner.class.getName());
+
+    /**
+     * A single unit of work, usually writing one artifact.
+     */
+    @FunctionalInterface
+    public static interface Task {
+
+        public void run() throws IOException;
+    }
+
+    private final String name;
+    private final int threads;
+
+    /**
+     * @param name The name of the work, used for logging and thread names.
+     * @param threads The maximum number of threads, 0 for one per processor.
+     */
+    public TaskRunner(String name, int threads) {
+        this.name = name;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Runs the given tasks and waits for all of them to finish. With only one
+     * thread, or only one task, the tasks run on the calling thread.
+     *
+     * @param tasks The tasks to run.
+     * @throws IOException If one or more tasks failed. The first failure is
+     * thrown, the others are added to it as suppressed exceptions.
+     */
+    public void run(List<Task> tasks) throws IOException {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        int poolSize = Math.min(threads, tasks.size());
+        LOGGER.debug("Running {} {} tasks on {} threads.", tasks.size(), name, poolSize);
+        if (poolSize == 1) {
+            IOException failure = null;
+            for (Task task : tasks) {
+                try {
+                    task.run();
+                } catch (IOException | RuntimeException ex) {
+                    failure = addFailure(failure, ex);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize, new NamedThreadFactory(name + "-"));
+        try {
+            List<Future<?>> futures = new ArrayList<>(tasks.size());
+            for (Task task : tasks) {
+                futures.add(pool.submit(() -> {
+                    task.run();
+                    return null;
+                }));
+            }
+            IOException failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ex) {
+                    failure = addFailure(failure, ex.getCause());
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while running " + name + " tasks", ex);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private IOException addFailure(IOException failure, Throwable cause) {
+        LOGGER.error("A {} task failed", name, cause);
+        IOException wrapped = new IOException("A " + name + " task failed: " + cause.getMessage(), cause);
+        if (failure == null) {
+            return wrapped;
+        }
+        failure.addSuppressed(wrapped);
+        return failure;
+    }
+}
@@ -0,0 +1,128 @@
+package hylke.dotgen;
+
+/**
+ * Normalises the text content of table cells in a single pass, using a
+ * re-usable buffer, so the only allocation is the resulting String.
+ *
+ * Instances are not thread-safe, use {@link #get()} to get the instance for
+ * the current thread.
+ *
+ * @author hylke
+ */
+public class TextNormalizer {
+
+    private static final ThreadLocal<TextNormalizer> INSTANCES = ThreadLocal.withInitial(TextNormalizer::new);
+
+    private char[] buffer = new char[256];
+
+    /**
+     * @return The normaliser for the current thread.
+     */
+    public static TextNormalizer get() {
+        return INSTANCES.get();
+    }
+
+    /**
+     * Cleans the given text. The text is trimmed, and newlines, tabs and
+     * carriage returns are turned into spaces. If noSpaces is true, all spaces
+     * and all bracketed tokens without spaces (like [1]) are removed, otherwise
+     * sequences of spaces are collapsed into a single space.
+     *
+     * @param data The text to clean.
+     * @param noSpaces Flag indicating all spaces should be removed.
+     * @return The cleaned text.
+     */
+    public String clean(CharSequence data, boolean noSpaces) {
+        int length = normalize(data, noSpaces, false);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Cleans the given text like clean(data, true), and turns it into lower
+     * case, for use as a lookup key.
+     *
+     * @param data The text to turn into a key.
+     * @return The key.
+     */
+    public String key(CharSequence data) {
+        int length = normalize(data, true, true);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Writes the normalised text to the buffer, growing the buffer when
+     * needed. The buffer must be read after this call, not before.
+     *
+     * @return The length of the normalised text.
+     */
+    private int normalize(CharSequence data, boolean noSpaces, boolean lowerCase) {
+        int start = 0;
+        int end = data.length();
+        while (start < end && data.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && data.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        if (buffer.length < end - start) {
+            buffer = new char[Math.max(end - start, buffer.length * 2)];
+        }
+        int length = 0;
+        boolean inSpaces = false;
+        int i = start;
+        while (i < end) {
+            char c = map(data.charAt(i));
+            if (c == ' ') {
+                if (!noSpaces && !inSpaces) {
+                    buffer[length++] = ' ';
+                }
+                inSpaces = true;
+                i++;
+                continue;
+            }
+            inSpaces = false;
+            if (noSpaces && c == '[') {
+                int close = findTokenEnd(data, i, end);
+                if (close > 0) {
+                    i = close + 1;
+                    continue;
+                }
+            }
+            buffer[length++] = lowerCase ? Character.toLowerCase(c) : c;
+            i++;
+        }
+        return length;
+    }
+
+    /**
+     * Finds the last ']' in the run of non-space characters starting at the
+     * '[' at the given start, with at least one character in between.
+     *
+     * @return The index of the ']', or -1 if there is none.
+     */
+    private static int findTokenEnd(CharSequence data, int start, int end) {
+        int close = -1;
+        for (int i = start + 1; i < end; i++) {
+            char c = map(data.charAt(i));
+            if (c == ' ') {
+                break;
+            }
+            if (c == ']' && i > start + 1) {
+                close = i;
+            }
+        }
+        return close;
+    }
+
+    private static char map(char c) {
+        switch (c) {
+            case '\n':
+            case '\t':
+            case '\r':
+                return ' ';
+
+            default:
+                return c;
+        }
+    }
+}
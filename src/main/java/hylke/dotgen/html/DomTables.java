@@ -0,0 +1,176 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.w3c.dom.Node;
+
+/**
+ * Walks the tables of a DOM in place, without cloning nodes or evaluating
+ * XPath expressions.
+ *
+ * The results are the same as those of the //table, //tr, //td and //th
+ * XPath expressions on (cloned) table and row nodes: rows and cells of nested
+ * tables are also part of the outer table and row.
+ *
+ * @author hylke
+ */
+public class DomTables {
+
+    /**
+     * The Xerces feature that has to be disabled to make reading a DOM from
+     * multiple threads safe.
+     */
+    public static final String FEATURE_DEFER_NODE_EXPANSION = "http://apache.org/xml/features/dom/defer-node-expansion";
+
+    /**
+     * Converts a table into something else.
+     *
+     * @param <T> The type to convert to.
+     */
+    public static interface TableMapper<T> {
+
+        public T map(int index, HtmlTable table);
+    }
+
+    private DomTables() {
+        // Utility class
+    }
+
+    /**
+     * Finds all table elements below the given node, in document order.
+     *
+     * @param root The node to search in.
+     * @return The table elements.
+     */
+    public static List<Node> findTables(Node root) {
+        List<Node> result = new ArrayList<>();
+        findElements(root, "table", result);
+        return result;
+    }
+
+    /**
+     * Reads the text content of the rows and cells of the given table.
+     *
+     * @param table The table element to read.
+     * @return A light-weight copy of the table.
+     */
+    public static HtmlTable readTable(Node table) {
+        HtmlTable result = new HtmlTable();
+        List<Node> rowNodes = new ArrayList<>();
+        List<Node> cellNodes = new ArrayList<>();
+        findElements(table, "tr", rowNodes);
+        StringBuilder text = new StringBuilder();
+        for (Node rowNode : rowNodes) {
+            HtmlRow row = new HtmlRow();
+            cellNodes.clear();
+            findElements(rowNode, "td", cellNodes);
+            for (Node cellNode : cellNodes) {
+                row.addCell(getText(cellNode, text));
+            }
+            cellNodes.clear();
+            findElements(rowNode, "th", cellNodes);
+            for (Node cellNode : cellNodes) {
+                row.addHeader(getText(cellNode, text));
+            }
+            result.addRow(row);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given tables on a fork-join pool, and maps the results.
+     *
+     * The DOM must not be modified while this runs, and must have been built
+     * without deferred node expansion, see
+     * {@link #FEATURE_DEFER_NODE_EXPANSION}.
+     *
+     * @param <T> The type the tables are mapped to.
+     * @param tables The table elements to read.
+     * @param threads The number of threads to use, 0 for one per processor.
+     * @param mapper The mapper to apply to each table.
+     * @return The mapped tables, in the order of the given table elements.
+     * @throws IOException If reading or mapping a table failed.
+     */
+    public static <T> List<T> readTables(List<Node> tables, int threads, TableMapper<T> mapper) throws IOException {
+        int parallelism = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            return pool.submit(() -> IntStream.range(0, tables.size())
+                    .parallel()
+                    .mapToObj(i -> mapper.map(i, readTable(tables.get(i))))
+                    .collect(Collectors.toList()))
+                    .get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading tables", ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Failed to read tables", ex.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Adds all descendant elements of root with the given local name to the
+     * result, in document order.
+     */
+    private static void findElements(Node root, String name, List<Node> result) {
+        Node node = root.getFirstChild();
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE && name.equals(getName(node))) {
+                result.add(node);
+            }
+            node = nextInSubtree(root, node);
+        }
+    }
+
+    /**
+     * Returns the text content of the given node, like getTextContent(),
+     * re-using the given buffer.
+     */
+    private static String getText(Node root, StringBuilder buffer) {
+        buffer.setLength(0);
+        Node node = root.getFirstChild();
+        while (node != null) {
+            short type = node.getNodeType();
+            if (type == Node.TEXT_NODE || type == Node.CDATA_SECTION_NODE) {
+                buffer.append(node.getNodeValue());
+            }
+            node = nextInSubtree(root, node);
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * The next node after the given one in document order, without leaving the
+     * subtree of root.
+     */
+    private static Node nextInSubtree(Node root, Node node) {
+        Node next = node.getFirstChild();
+        if (next != null) {
+            return next;
+        }
+        while (node != root) {
+            next = node.getNextSibling();
+            if (next != null) {
+                return next;
+            }
+            node = node.getParentNode();
+        }
+        return null;
+    }
+
+    private static String getName(Node node) {
+        String name = node.getLocalName();
+        if (name == null) {
+            return node.getNodeName();
+        }
+        return name;
+    }
+
+}
@@ -0,0 +1,163 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Removes elements that contain nothing but whitespace from a stream of
+ * (html) characters, without building a tree.
+ *
+ * @author hylke
+ */
+public abstract class EmptyElementFilter extends LookaheadFilterReader {
+
+    private final String closeTag;
+    private final boolean nested;
+    /**
+     * Start tags (and the whitespace after them) of elements that may turn out
+     * to be empty, outermost first.
+     */
+    private final List<StringBuilder> pending = new ArrayList<>();
+    private int pendingDepth;
+
+    /**
+     * @param in The input to filter.
+     * @param closeTag The literal end tag of the elements to remove.
+     * @param nested If true, elements that only contain removed elements (and
+     * whitespace) are also removed.
+     */
+    protected EmptyElementFilter(Reader in, String closeTag, boolean nested) {
+        super(in);
+        this.closeTag = closeTag;
+        this.nested = nested;
+    }
+
+    /**
+     * Checks if there is a start tag of an element to remove at pos.
+     *
+     * @return The length of the start tag, or 0 if there is none.
+     * @throws IOException If the input can not be read.
+     */
+    protected abstract int matchStartTag() throws IOException;
+
+    @Override
+    protected void process() throws IOException {
+        if (!ensure(1)) {
+            flushPending();
+            finish();
+            return;
+        }
+        char c = buf[pos];
+        if (c == '<') {
+            int length = matchStartTag();
+            if (length > 0) {
+                if (!nested) {
+                    flushPending();
+                }
+                push(length);
+                return;
+            }
+            if (pendingDepth > 0 && matches(closeTag, 0)) {
+                pos += closeTag.length();
+                pendingDepth--;
+                return;
+            }
+        } else if (pendingDepth > 0) {
+            if (isWhitespace(c)) {
+                pending.get(pendingDepth - 1).append(c);
+                pos++;
+                return;
+            }
+        } else {
+            copyUntil('<');
+            return;
+        }
+        flushPending();
+        out.append(c);
+        pos++;
+    }
+
+    private void push(int length) {
+        StringBuilder start;
+        if (pendingDepth < pending.size()) {
+            start = pending.get(pendingDepth);
+            start.setLength(0);
+        } else {
+            start = new StringBuilder();
+            pending.add(start);
+        }
+        start.append(buf, pos, length);
+        pendingDepth++;
+        pos += length;
+    }
+
+    private void flushPending() {
+        for (int i = 0; i < pendingDepth; i++) {
+            out.append(pending.get(i));
+        }
+        pendingDepth = 0;
+    }
+
+    /**
+     * Removes empty MS-Word bookmark spans, like
+     * {@code <span style='mso-bookmark:_Toc123'> </span>}, including spans that
+     * only contain other empty bookmark spans.
+     */
+    public static class BookmarkSpans extends EmptyElementFilter {
+
+        private static final String START = "<span style=";
+        private static final String BOOKMARK = "mso-bookmark:_Toc";
+        private static final int MAX_DIGITS = 64;
+
+        public BookmarkSpans(Reader in) {
+            super(in, "</span>", true);
+        }
+
+        @Override
+        protected int matchStartTag() throws IOException {
+            if (!matches(START, 0) || !isQuoteAt(START.length()) || !matches(BOOKMARK, START.length() + 1)) {
+                return 0;
+            }
+            int offset = START.length() + 1 + BOOKMARK.length();
+            int digits = 0;
+            while (digits <= MAX_DIGITS && ensure(offset + 1) && buf[pos + offset] >= '0' && buf[pos + offset] <= '9') {
+                digits++;
+                offset++;
+            }
+            if (digits == 0 || digits > MAX_DIGITS || !isQuoteAt(offset) || !matches(">", offset + 1)) {
+                return 0;
+            }
+            return offset + 2;
+        }
+
+        private boolean isQuoteAt(int offset) throws IOException {
+            if (!ensure(offset + 1)) {
+                return false;
+            }
+            char c = buf[pos + offset];
+            return c == '\'' || c == '"';
+        }
+    }
+
+    /**
+     * Removes td elements without attributes that only contain whitespace.
+     */
+    public static class EmptyCells extends EmptyElementFilter {
+
+        private static final String START = "<td>";
+
+        public EmptyCells(Reader in) {
+            super(in, "</td>", false);
+        }
+
+        @Override
+        protected int matchStartTag() throws IOException {
+            if (matches(START, 0)) {
+                return START.length();
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Removes the o:gfxdata attributes, holding embedded graphics, that MS Word
+ * adds to its html exports. These can be very large, and are not needed.
+ *
+ * @author hylke
+ */
+public class GfxDataFilter extends LookaheadFilterReader {
+
+    private static final String ATTRIBUTE = "o:gfxdata=\"";
+
+    private boolean skipping;
+
+    public GfxDataFilter(Reader in) {
+        super(in);
+    }
+
+    @Override
+    protected void process() throws IOException {
+        if (!ensure(1)) {
+            finish();
+            return;
+        }
+        if (skipping) {
+            while (pos < limit) {
+                if (buf[pos++] == '"') {
+                    skipping = false;
+                    return;
+                }
+            }
+            return;
+        }
+        if (buf[pos] != 'o') {
+            copyUntil('o');
+            return;
+        }
+        int length = ATTRIBUTE.length();
+        if (matches(ATTRIBUTE, 0) && ensure(length + 1) && buf[pos + length] != '"') {
+            pos += length;
+            skipping = true;
+            return;
+        }
+        out.append(buf[pos++]);
+    }
+
+}
@@ -0,0 +1,51 @@
+package hylke.dotgen.html;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The text content of the data (td) and header (th) cells of a table row.
+ *
+ * @author hylke
+ */
+public class HtmlRow {
+
+    private final List<String> cells = new ArrayList<>();
+    private final List<String> headers = new ArrayList<>();
+
+    public HtmlRow addCell(String text) {
+        cells.add(text);
+        return this;
+    }
+
+    public HtmlRow addHeader(String text) {
+        headers.add(text);
+        return this;
+    }
+
+    /**
+     * @return The text of the td cells of this row.
+     */
+    public List<String> getCells() {
+        return cells;
+    }
+
+    /**
+     * @return The text of the th cells of this row.
+     */
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return The td cells of this row, or the th cells if there are no td
+     * cells.
+     */
+    public List<String> getCellsOrHeaders() {
+        if (cells.isEmpty()) {
+            return headers;
+        }
+        return cells;
+    }
+
+}
@@ -0,0 +1,37 @@
+package hylke.dotgen.html;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A light-weight copy of a table, holding only the text content of its rows
+ * and cells.
+ *
+ * Rows and cells of nested tables are also part of the outer table, and the
+ * text of a cell includes the text of any tables nested in it, just like the
+ * results of the //tr and //td XPath expressions on a detached table node.
+ *
+ * @author hylke
+ */
+public class HtmlTable {
+
+    private final List<HtmlRow> rows = new ArrayList<>();
+
+    public HtmlTable addRow(HtmlRow row) {
+        rows.add(row);
+        return this;
+    }
+
+    public List<HtmlRow> getRows() {
+        return rows;
+    }
+
+    public HtmlRow getRow(int idx) {
+        return rows.get(idx);
+    }
+
+    public int getRowCount() {
+        return rows.size();
+    }
+
+}
@@ -0,0 +1,164 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Base class for single-pass filters that need a bit of lookahead on the
+ * characters streaming through them.
+ *
+ * @author hylke
+ */
+public abstract class LookaheadFilterReader extends Reader {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Reader in;
+    protected char[] buf = new char[BUFFER_SIZE];
+    /**
+     * The position of the next unprocessed character in buf.
+     */
+    protected int pos;
+    /**
+     * The end of the valid data in buf.
+     */
+    protected int limit;
+    private boolean eof;
+
+    /**
+     * The processed characters, waiting to be read.
+     */
+    protected final StringBuilder out = new StringBuilder();
+    private int outPos;
+    private boolean finished;
+
+    protected LookaheadFilterReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Process some of the input, appending the result to out. Implementations
+     * must consume at least one character per call, or call finish() when
+     * there is no more input.
+     *
+     * @throws IOException If the input can not be read.
+     */
+    protected abstract void process() throws IOException;
+
+    /**
+     * Makes sure that at least count characters are available after pos,
+     * reading more input if needed.
+     *
+     * @param count The number of characters needed.
+     * @return false if the input ends before that many characters.
+     * @throws IOException If the input can not be read.
+     */
+    protected boolean ensure(int count) throws IOException {
+        while (limit - pos < count) {
+            if (eof) {
+                return false;
+            }
+            if (pos > 0) {
+                System.arraycopy(buf, pos, buf, 0, limit - pos);
+                limit -= pos;
+                pos = 0;
+            }
+            if (limit + count > buf.length) {
+                char[] newBuf = new char[Math.max(buf.length * 2, limit + count)];
+                System.arraycopy(buf, 0, newBuf, 0, limit);
+                buf = newBuf;
+            }
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read < 0) {
+                eof = true;
+            } else {
+                limit += read;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the input at pos + offset matches the given literal, without
+     * consuming anything.
+     *
+     * @param literal The literal to match.
+     * @param offset The offset from pos to start matching at.
+     * @return true if the input matches.
+     * @throws IOException If the input can not be read.
+     */
+    protected boolean matches(String literal, int offset) throws IOException {
+        int length = literal.length();
+        if (!ensure(offset + length)) {
+            return false;
+        }
+        int start = pos + offset;
+        for (int i = 0; i < length; i++) {
+            if (buf[start + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies input to the output, up to (not including) the next occurrence of
+     * the given character, or the end of the currently buffered input.
+     *
+     * @param stop The character to stop at.
+     */
+    protected void copyUntil(char stop) {
+        int start = pos;
+        while (pos < limit && buf[pos] != stop) {
+            pos++;
+        }
+        out.append(buf, start, pos - start);
+    }
+
+    /**
+     * Marks the filter as finished, no more calls to process() will be made.
+     */
+    protected void finish() {
+        finished = true;
+    }
+
+    protected static boolean isWhitespace(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (outPos >= out.length()) {
+            out.setLength(0);
+            outPos = 0;
+            if (finished) {
+                return -1;
+            }
+            process();
+        }
+        int count = Math.min(len, out.length() - outPos);
+        out.getChars(outPos, outPos + count, cbuf, off);
+        outPos += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+}
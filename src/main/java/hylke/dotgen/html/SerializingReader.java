@@ -0,0 +1,89 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.io.PipedReader;
+import java.io.PipedWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.UnaryOperator;
+import org.htmlcleaner.Serializer;
+import org.htmlcleaner.TagNode;
+
+/**
+ * A Reader that returns the serialised form of a cleaned HtmlCleaner tree.
+ *
+ * The tree is serialised on a background thread, into a bounded pipe, so the
+ * serialised document never exists in memory as a whole.
+ *
+ * @author hylke
+ */
+public class SerializingReader extends Reader {
+
+    private static final int PIPE_SIZE = 64 * 1024;
+
+    private final PipedReader pipe;
+    private final Thread worker;
+    private volatile IOException failure;
+
+    public SerializingReader(TagNode node, Serializer serializer) throws IOException {
+        this(node, serializer, UnaryOperator.identity());
+    }
+
+    /**
+     * @param node The cleaned tree to serialise.
+     * @param serializer The serializer to use.
+     * @param decorator Wraps the work of the background thread, for instance
+     * to measure it.
+     * @throws IOException If the pipe could not be made.
+     */
+    public SerializingReader(TagNode node, Serializer serializer, UnaryOperator<Runnable> decorator) throws IOException {
+        pipe = new PipedReader(PIPE_SIZE);
+        final PipedWriter pipeWriter = new PipedWriter(pipe);
+        worker = new Thread(decorator.apply(() -> {
+            // The failure must be set before the pipe is closed, or the reader
+            // could see the end of the pipe as the end of a complete document.
+            try {
+                serializer.write(node, pipeWriter, StandardCharsets.UTF_8.name());
+            } catch (IOException ex) {
+                failure = ex;
+            } catch (RuntimeException ex) {
+                failure = new IOException("Failed to serialise cleaned input", ex);
+            } finally {
+                closeQuietly(pipeWriter);
+            }
+        }), "html-serializer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void closeQuietly(Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int count = pipe.read(cbuf, off, len);
+        if (count < 0 && failure != null) {
+            throw failure;
+        }
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        pipe.close();
+        try {
+            worker.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+package hylke.dotgen.html;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A source document, memory-mapped or read into the heap.
+ *
+ * The charset is taken from the byte order mark if there is one, otherwise
+ * from a meta tag near the start of the document, otherwise a fallback is
+ * used. The content is available as a Reader that decodes the bytes on the
+ * fly.
+ *
+ * A mapping can not be released explicitly, it stays until the document is
+ * garbage collected. On Windows the mapped file can not be replaced while
+ * that is the case. Documents are only kept for the duration of one parse,
+ * and sources that are edited while the program runs, like in watch mode,
+ * should be read into the heap with {@link #read(File, String, Charset)}.
+ *
+ * @author hylke
+ */
+public class SourceDocument {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SourceDocument.class.getName());
+    /**
+     * How far into the document to look for a meta tag with a charset.
+     */
+    private static final int META_SCAN_SIZE = 16 * 1024;
+    private static final Pattern META_CHARSET = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?([A-Za-z0-9._:-]+)", Pattern.CASE_INSENSITIVE);
+
+    private final File file;
+    private final ByteBuffer bytes;
+    private final Charset charset;
+
+    private SourceDocument(File file, ByteBuffer bytes, Charset charset) {
+        this.file = file;
+        this.bytes = bytes;
+        this.charset = charset;
+    }
+
+    /**
+     * Maps the given file into memory and determines its charset.
+     *
+     * @param file The file to open.
+     * @param forcedCharset The charset to use regardless of what the document
+     * says, or null or empty to detect the charset.
+     * @param fallback The charset to use when none can be detected.
+     * @return The mapped document.
+     * @throws IOException If the file can not be mapped.
+     */
+    public static SourceDocument open(File file, String forcedCharset, Charset fallback) throws IOException {
+        ByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Source file too large to map: " + file + " (" + size + " bytes)");
+            }
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        return create(file, mapped, forcedCharset, fallback);
+    }
+
+    /**
+     * Reads the given file into the heap and determines its charset. The file
+     * is closed when this returns.
+     *
+     * @param file The file to read.
+     * @param forcedCharset The charset to use regardless of what the document
+     * says, or null or empty to detect the charset.
+     * @param fallback The charset to use when none can be detected.
+     * @return The document.
+     * @throws IOException If the file can not be read.
+     */
+    public static SourceDocument read(File file, String forcedCharset, Charset fallback) throws IOException {
+        return create(file, ByteBuffer.wrap(Files.readAllBytes(file.toPath())), forcedCharset, fallback);
+    }
+
+    private static SourceDocument create(File file, ByteBuffer mapped, String forcedCharset, Charset fallback) {
+        Charset charset = fromBom(mapped);
+        if (charset != null) {
+            mapped.position(bomLength(charset));
+        } else if (forcedCharset != null && !forcedCharset.isEmpty()) {
+            charset = Charset.forName(forcedCharset);
+        } else {
+            charset = fromMeta(mapped);
+            if (charset == null) {
+                charset = fallback;
+            }
+        }
+        SourceDocument document = new SourceDocument(file, mapped.slice(), charset);
+        LOGGER.info("Reading {}, {} bytes, charset {}", file, document.getSize(), charset);
+        return document;
+    }
+
+    private static Charset fromBom(ByteBuffer buffer) {
+        int b0 = buffer.limit() > 0 ? buffer.get(0) & 0xff : -1;
+        int b1 = buffer.limit() > 1 ? buffer.get(1) & 0xff : -1;
+        int b2 = buffer.limit() > 2 ? buffer.get(2) & 0xff : -1;
+        if (b0 == 0xEF && b1 == 0xBB && b2 == 0xBF) {
+            return StandardCharsets.UTF_8;
+        }
+        if (b0 == 0xFE && b1 == 0xFF) {
+            return StandardCharsets.UTF_16BE;
+        }
+        if (b0 == 0xFF && b1 == 0xFE) {
+            return StandardCharsets.UTF_16LE;
+        }
+        return null;
+    }
+
+    private static int bomLength(Charset charset) {
+        return StandardCharsets.UTF_8.equals(charset) ? 3 : 2;
+    }
+
+    private static Charset fromMeta(ByteBuffer buffer) {
+        int length = Math.min(buffer.limit(), META_SCAN_SIZE);
+        byte[] head = new byte[length];
+        buffer.duplicate().get(head);
+        Matcher matcher = META_CHARSET.matcher(new String(head, StandardCharsets.ISO_8859_1));
+        if (!matcher.find()) {
+            return null;
+        }
+        String name = matcher.group(1);
+        try {
+            if (Charset.isSupported(name)) {
+                return Charset.forName(name);
+            }
+        } catch (IllegalCharsetNameException ex) {
+            // Fall through.
+        }
+        LOGGER.warn("Unsupported charset in document: {}", name);
+        return null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    /**
+     * @return The size of the content in bytes, excluding any byte order mark.
+     */
+    public int getSize() {
+        return bytes.limit();
+    }
+
+    /**
+     * @return A read-only view on the raw bytes of the content, excluding any
+     * byte order mark.
+     */
+    public ByteBuffer getBytes() {
+        return bytes.asReadOnlyBuffer();
+    }
+
+    /**
+     * Opens a new Reader on the content. Each Reader decodes the mapped bytes
+     * independently, in small chunks.
+     *
+     * @return A new Reader on the content.
+     */
+    public Reader openReader() {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return Channels.newReader(new ByteBufferChannel(bytes.duplicate()), decoder, -1);
+    }
+
+    private static class ByteBufferChannel implements ReadableByteChannel {
+
+        private final ByteBuffer source;
+        private boolean open = true;
+
+        public ByteBufferChannel(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(source.remaining(), dst.remaining());
+            ByteBuffer chunk = source.slice();
+            chunk.limit(count);
+            dst.put(chunk);
+            source.position(source.position() + count);
+            return count;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package hylke.dotgen.html;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Extracts the tables from a (cleaned, well-formed) html document, using a
+ * StAX reader. Only the tables are materialised, so memory use depends on the
+ * size of the largest table, not on the size of the document.
+ *
+ * @author hylke
+ */
+public class StaxTableReader {
+
+    public static interface TableConsumer {
+
+        public void accept(HtmlTable table) throws IOException;
+    }
+
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private final Deque<HtmlTable> openTables = new ArrayDeque<>();
+    private final Deque<HtmlRow> openRows = new ArrayDeque<>();
+    private final Deque<Cell> openCells = new ArrayDeque<>();
+    /**
+     * Tables nested in the current outer table, in document order.
+     */
+    private final List<HtmlTable> pendingTables = new ArrayList<>();
+    private int tableCount;
+
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Reads all tables from the given input, handing them to the consumer in
+     * document order. Nested tables are handed over after the table they are
+     * nested in, like the result of the //table XPath expression.
+     *
+     * @param input The well-formed xml to read.
+     * @param consumer The consumer to give the tables to.
+     * @return The number of tables found.
+     * @throws IOException If the input can not be read or parsed.
+     */
+    public int readTables(Reader input, TableConsumer consumer) throws IOException {
+        try {
+            XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+            try {
+                while (reader.hasNext()) {
+                    switch (reader.next()) {
+                        case XMLStreamConstants.START_ELEMENT:
+                            startElement(reader.getLocalName());
+                            break;
+
+                        case XMLStreamConstants.END_ELEMENT:
+                            endElement(reader.getLocalName(), consumer);
+                            break;
+
+                        case XMLStreamConstants.CHARACTERS:
+                        case XMLStreamConstants.CDATA:
+                        case XMLStreamConstants.SPACE:
+                            if (!openCells.isEmpty()) {
+                                characters(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                            }
+                            break;
+
+                        default:
+                        // Nothing to do.
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException ex) {
+            throw new IOException("Failed to parse cleaned input", ex);
+        }
+        return tableCount;
+    }
+
+    private void startElement(String name) {
+        switch (name) {
+            case "table":
+                HtmlTable table = new HtmlTable();
+                openTables.push(table);
+                pendingTables.add(table);
+                tableCount++;
+                break;
+
+            case "tr":
+                if (openTables.isEmpty()) {
+                    return;
+                }
+                HtmlRow row = new HtmlRow();
+                openRows.push(row);
+                for (HtmlTable openTable : openTables) {
+                    openTable.addRow(row);
+                }
+                break;
+
+            case "td":
+            case "th":
+                if (openRows.isEmpty()) {
+                    return;
+                }
+                openCells.push(new Cell("th".equals(name), openRows));
+                break;
+
+            default:
+            // Not interesting.
+        }
+    }
+
+    private void endElement(String name, TableConsumer consumer) throws IOException {
+        switch (name) {
+            case "table":
+                if (openTables.isEmpty()) {
+                    return;
+                }
+                openTables.pop();
+                if (openTables.isEmpty()) {
+                    for (HtmlTable table : pendingTables) {
+                        consumer.accept(table);
+                    }
+                    pendingTables.clear();
+                }
+                break;
+
+            case "tr":
+                if (!openRows.isEmpty()) {
+                    openRows.pop();
+                }
+                break;
+
+            case "td":
+            case "th":
+                if (!openCells.isEmpty()) {
+                    openCells.pop().finish();
+                }
+                break;
+
+            default:
+            // Not interesting.
+        }
+    }
+
+    private void characters(char[] text, int start, int length) {
+        for (Cell cell : openCells) {
+            cell.text.append(text, start, length);
+        }
+    }
+
+    /**
+     * A cell that is still open. Its place in the rows it belongs to is
+     * reserved at the start, so cells stay in document order, but its text is
+     * only known once the cell ends.
+     */
+    private static class Cell {
+
+        private final List<List<String>> targets = new ArrayList<>(1);
+        private final int[] positions;
+        private final StringBuilder text = new StringBuilder();
+
+        public Cell(boolean header, Deque<HtmlRow> rows) {
+            positions = new int[rows.size()];
+            int idx = 0;
+            for (HtmlRow row : rows) {
+                List<String> target = header ? row.getHeaders() : row.getCells();
+                positions[idx++] = target.size();
+                target.add("");
+                targets.add(target);
+            }
+        }
+
+        public void finish() {
+            String content = text.toString();
+            for (int idx = 0; idx < positions.length; idx++) {
+                targets.get(idx).set(positions[idx], content);
+            }
+        }
+    }
+}
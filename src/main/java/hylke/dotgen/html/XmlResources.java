@@ -0,0 +1,55 @@
+package hylke.dotgen.html;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.htmlcleaner.HtmlCleaner;
+
+/**
+ * Per-thread instances of the cleaners and XML parsers, so that a thread that
+ * parses several documents only initialises them once.
+ *
+ * @author hylke
+ */
+public final class XmlResources {
+
+    private static final ThreadLocal<HtmlCleaner> CLEANER = ThreadLocal.withInitial(HtmlCleaner::new);
+    private static final ThreadLocal<DocumentBuilder> BUILDER_DEFERRED = new ThreadLocal<>();
+    private static final ThreadLocal<DocumentBuilder> BUILDER_EXPANDED = new ThreadLocal<>();
+
+    private XmlResources() {
+        // Utility class
+    }
+
+    /**
+     * @return The HtmlCleaner of the current thread, with default properties.
+     */
+    public static HtmlCleaner getCleaner() {
+        return CLEANER.get();
+    }
+
+    /**
+     * Returns the namespace-aware DocumentBuilder of the current thread.
+     *
+     * @param deferred If false, the builder fully expands all nodes while
+     * parsing, so the resulting document can be read by multiple threads.
+     * @return The DocumentBuilder, reset to its initial state.
+     * @throws ParserConfigurationException If the builder could not be made.
+     */
+    public static DocumentBuilder getDocumentBuilder(boolean deferred) throws ParserConfigurationException {
+        ThreadLocal<DocumentBuilder> holder = deferred ? BUILDER_DEFERRED : BUILDER_EXPANDED;
+        DocumentBuilder builder = holder.get();
+        if (builder == null) {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            if (!deferred) {
+                factory.setFeature(DomTables.FEATURE_DEFER_NODE_EXPANSION, false);
+            }
+            builder = factory.newDocumentBuilder();
+            holder.set(builder);
+        } else {
+            builder.reset();
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,32 @@
+package hylke.dotgen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The generation of one artifact, from producing the content to replacing the
+ * file.
+ *
+ * @author hylke
+ */
+@Name("hylke.dotgen.Artifact")
+@Label("Artifact")
+@Category({"DotGen", "Generator"})
+@Description("The generation of one output file")
+public class ArtifactEvent extends Event {
+
+    @Label("File")
+    public String file;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Written")
+    @Description("False if the file already had this content")
+    public boolean written;
+}
@@ -0,0 +1,34 @@
+package hylke.dotgen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A burst of entity lookups in the Data of a parser: all findOrCreate calls
+ * made while handling one table.
+ *
+ * @author hylke
+ */
+@Name("hylke.dotgen.EntityLookups")
+@Label("Entity Lookups")
+@Category({"DotGen", "Parser"})
+@Description("The findOrCreate calls made while handling one table")
+public class EntityLookupEvent extends Event {
+
+    @Label("Table Index")
+    public int tableIndex;
+
+    @Label("Table Type")
+    public String tableType;
+
+    @Label("Lookups")
+    @Description("The number of findOrCreate calls")
+    public long lookups;
+
+    @Label("Created")
+    @Description("The number of entities that did not exist yet")
+    public long created;
+}
@@ -0,0 +1,68 @@
+package hylke.dotgen.jfr;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A flight recording of the whole run, with the default JDK settings and all
+ * DotGen events, written to a file when closed or when the JVM exits.
+ *
+ * @author hylke
+ */
+public class FlightRecording implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FlightRecording.class.getName());
+
+    private final Recording recording;
+    private final Path file;
+
+    private FlightRecording(Recording recording, Path file) {
+        this.recording = recording;
+        this.file = file;
+    }
+
+    /**
+     * Starts recording.
+     *
+     * @param file The jfr file to write the recording to.
+     * @return The running recording.
+     * @throws IOException If the file can not be written.
+     */
+    public static FlightRecording start(Path file) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (ParseException ex) {
+            throw new IOException("Failed to read the default recording settings", ex);
+        }
+        recording.setName("DotGen");
+        recording.enable(TableEvent.class);
+        recording.enable(EntityLookupEvent.class);
+        recording.enable(ArtifactEvent.class);
+        recording.setDestination(file);
+        recording.setDumpOnExit(true);
+        recording.start();
+        LOGGER.info("Recording to {}", file);
+        return new FlightRecording(recording, file);
+    }
+
+    /**
+     * Stops the recording and writes it to the file, unless the JVM is
+     * shutting down and has already written it.
+     */
+    @Override
+    public void close() {
+        if (recording.getState() != RecordingState.RUNNING) {
+            return;
+        }
+        recording.stop();
+        recording.close();
+        LOGGER.info("Wrote recording {}", file);
+    }
+}
@@ -0,0 +1,38 @@
+package hylke.dotgen.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The handling of one table of a source document by a parser.
+ *
+ * @author hylke
+ */
+@Name("hylke.dotgen.Table")
+@Label("Table")
+@Category({"DotGen", "Parser"})
+@Description("The handling of one table of the source document")
+public class TableEvent extends Event {
+
+    @Label("Index")
+    @Description("The index of the table in the document")
+    public int index;
+
+    @Label("Type")
+    @Description("The type the table was classified as")
+    public String type;
+
+    @Label("Label")
+    @Description("The cleaned content of the first cell")
+    public String label;
+
+    @Label("Rows")
+    public int rowCount;
+
+    @Label("Failed")
+    @Description("Whether handling the table threw an exception")
+    public boolean failed;
+}
@@ -0,0 +1,123 @@
+package hylke.dotgen.layout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A directed graph with the drawing attributes needed for rendering. Nodes are
+ * identified by name. Edges to nodes that were not added explicitly create
+ * plain ellipse nodes, like Graphviz does.
+ *
+ * @author hylke
+ */
+public class Graph {
+
+    public static enum Shape {
+        BOX, TABLE, ELLIPSE
+    }
+
+    public static enum Style {
+        SOLID, DASHED, DOTTED
+    }
+
+    public static class Node {
+
+        public final String name;
+        public final Shape shape;
+        public final Style style;
+        /**
+         * The lines of the label. For tables, each line is a row.
+         */
+        public final List<String> label;
+        public double width;
+        public double height;
+        /**
+         * The centre of the node, set by the layout.
+         */
+        public double x;
+        public double y;
+
+        public Node(String name, Shape shape, Style style, List<String> label) {
+            this.name = name;
+            this.shape = shape;
+            this.style = style;
+            this.label = label;
+        }
+    }
+
+    public static class Edge {
+
+        public final Node from;
+        public final Node to;
+        public final Style style;
+        /**
+         * The route of the edge, as x, y pairs from the tail to the head, set
+         * by the layout.
+         */
+        public double[] points = new double[0];
+
+        public Edge(Node from, Node to, Style style) {
+            this.from = from;
+            this.to = to;
+            this.style = style;
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final List<Edge> edges = new ArrayList<>();
+    private double width;
+    private double height;
+
+    /**
+     * Adds a node, unless a node with the same name already exists.
+     *
+     * @param name The name of the node.
+     * @param shape The shape of the node.
+     * @param style The line style of the node.
+     * @param label The label lines, the name if none are given.
+     * @return The node with the given name.
+     */
+    public Node addNode(String name, Shape shape, Style style, String... label) {
+        return nodes.computeIfAbsent(name, n -> new Node(n, shape, style, label.length == 0 ? Collections.singletonList(n) : Arrays.asList(label)));
+    }
+
+    /**
+     * Adds an edge, creating plain ellipse nodes for unknown names.
+     *
+     * @param from The name of the tail node.
+     * @param to The name of the head node.
+     * @param style The line style of the edge.
+     * @return The new edge.
+     */
+    public Edge addEdge(String from, String to, Style style) {
+        Edge edge = new Edge(addNode(from, Shape.ELLIPSE, Style.SOLID), addNode(to, Shape.ELLIPSE, Style.SOLID), style);
+        edges.add(edge);
+        return edge;
+    }
+
+    public Collection<Node> getNodes() {
+        return nodes.values();
+    }
+
+    public List<Edge> getEdges() {
+        return edges;
+    }
+
+    public double getWidth() {
+        return width;
+    }
+
+    public double getHeight() {
+        return height;
+    }
+
+    void setSize(double width, double height) {
+        this.width = width;
+        this.height = height;
+    }
+}
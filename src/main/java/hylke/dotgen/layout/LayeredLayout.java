@@ -0,0 +1,501 @@
+package hylke.dotgen.layout;
+
+import hylke.dotgen.layout.Graph.Edge;
+import hylke.dotgen.layout.Graph.Node;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A layered (Sugiyama style) layout, with the layers from left to right, like
+ * rankdir=LR in Graphviz.
+ *
+ * The steps are: breaking cycles by reversing back edges, longest-path
+ * layering, splitting long edges with dummy vertices, ordering the layers with
+ * barycenter sweeps, and placing the vertices close to their neighbours.
+ *
+ * @author hylke
+ */
+public class LayeredLayout {
+
+    public static final double FONT_SIZE = 14;
+    private static final double CHAR_WIDTH = 7.5;
+    private static final double PADDING = 8;
+    private static final double ROW_HEIGHT = 22;
+    private static final double RANK_SEP = 60;
+    private static final double NODE_SEP = 16;
+    private static final double DUMMY_SEP = 4;
+    private static final double MARGIN = 8;
+    private static final int ORDER_ITERATIONS = 24;
+    private static final int ORDER_PATIENCE = 4;
+    private static final int PLACE_ITERATIONS = 8;
+
+    /**
+     * A vertex of the layered graph, a node or a dummy on a long edge.
+     */
+    private static class Vertex {
+
+        final Node node;
+        final List<Vertex> in = new ArrayList<>();
+        final List<Vertex> out = new ArrayList<>();
+        int layer;
+        int order;
+        double size;
+        double pos;
+        double x;
+        double barycenter;
+
+        Vertex(Node node) {
+            this.node = node;
+        }
+    }
+
+    private static class Route {
+
+        final Edge edge;
+        final boolean reversed;
+        final List<Vertex> chain = new ArrayList<>();
+
+        Route(Edge edge, boolean reversed) {
+            this.edge = edge;
+            this.reversed = reversed;
+        }
+    }
+
+    /**
+     * Lays out the given graph, setting node sizes, positions and edge routes.
+     *
+     * @param graph The graph to lay out.
+     */
+    public void layout(Graph graph) {
+        Map<Node, Vertex> vertices = new IdentityHashMap<>();
+        List<Vertex> real = new ArrayList<>();
+        for (Node node : graph.getNodes()) {
+            measure(node);
+            Vertex vertex = new Vertex(node);
+            vertex.size = node.height;
+            vertices.put(node, vertex);
+            real.add(vertex);
+        }
+        List<Route> routes = new ArrayList<>();
+        List<Edge> selfLoops = new ArrayList<>();
+        Map<Vertex, List<Vertex>> succ = successors(graph, vertices, selfLoops);
+        Map<Vertex, Map<Vertex, Boolean>> back = findBackEdges(real, succ);
+        for (Edge edge : graph.getEdges()) {
+            if (edge.from == edge.to) {
+                continue;
+            }
+            Vertex from = vertices.get(edge.from);
+            Vertex to = vertices.get(edge.to);
+            boolean reversed = back.getOrDefault(from, Map.of()).containsKey(to);
+            routes.add(new Route(edge, reversed));
+        }
+        assignLayers(real, routes, vertices);
+        List<List<Vertex>> layers = buildLayers(real, routes, vertices);
+        orderLayers(layers);
+        place(graph, layers);
+        routeEdges(routes);
+        for (Edge loop : selfLoops) {
+            Node node = loop.from;
+            double x = node.x + node.width / 2;
+            loop.points = new double[]{x, node.y - 4, x + 16, node.y - 10, x + 16, node.y + 10, x, node.y + 4};
+        }
+    }
+
+    private static void measure(Node node) {
+        int longest = 0;
+        for (String line : node.label) {
+            longest = Math.max(longest, line.length());
+        }
+        double textWidth = longest * CHAR_WIDTH;
+        switch (node.shape) {
+            case TABLE:
+                node.width = textWidth + 4 * PADDING;
+                node.height = node.label.size() * ROW_HEIGHT + 2 * PADDING;
+                break;
+
+            case ELLIPSE:
+                node.width = textWidth * 1.25 + 2 * PADDING;
+                node.height = ROW_HEIGHT * node.label.size() * 1.4;
+                break;
+
+            default:
+                node.width = textWidth + 2 * PADDING;
+                node.height = ROW_HEIGHT * node.label.size() + PADDING;
+        }
+    }
+
+    private static Map<Vertex, List<Vertex>> successors(Graph graph, Map<Node, Vertex> vertices, List<Edge> selfLoops) {
+        Map<Vertex, List<Vertex>> succ = new IdentityHashMap<>();
+        for (Edge edge : graph.getEdges()) {
+            if (edge.from == edge.to) {
+                selfLoops.add(edge);
+                continue;
+            }
+            succ.computeIfAbsent(vertices.get(edge.from), v -> new ArrayList<>()).add(vertices.get(edge.to));
+        }
+        return succ;
+    }
+
+    /**
+     * Finds the edges that close a cycle in an iterative depth-first search.
+     * Reversing those makes the graph acyclic.
+     */
+    private static Map<Vertex, Map<Vertex, Boolean>> findBackEdges(List<Vertex> real, Map<Vertex, List<Vertex>> succ) {
+        Map<Vertex, Map<Vertex, Boolean>> back = new IdentityHashMap<>();
+        Map<Vertex, Integer> state = new IdentityHashMap<>();
+        Deque<Vertex> stack = new ArrayDeque<>();
+        Deque<Integer> next = new ArrayDeque<>();
+        for (Vertex root : real) {
+            if (state.containsKey(root)) {
+                continue;
+            }
+            state.put(root, 1);
+            stack.push(root);
+            next.push(0);
+            while (!stack.isEmpty()) {
+                Vertex vertex = stack.peek();
+                int index = next.pop();
+                List<Vertex> targets = succ.getOrDefault(vertex, List.of());
+                if (index >= targets.size()) {
+                    state.put(vertex, 2);
+                    stack.pop();
+                    continue;
+                }
+                next.push(index + 1);
+                Vertex target = targets.get(index);
+                Integer targetState = state.get(target);
+                if (targetState == null) {
+                    state.put(target, 1);
+                    stack.push(target);
+                    next.push(0);
+                } else if (targetState == 1) {
+                    back.computeIfAbsent(vertex, v -> new IdentityHashMap<>()).put(target, Boolean.TRUE);
+                }
+            }
+        }
+        return back;
+    }
+
+    /**
+     * Longest-path layering over the acyclic orientation of the edges. Vertices
+     * with more outgoing than incoming edges are then moved right, next to
+     * their nearest successor, which shortens more edges than it lengthens.
+     */
+    private static void assignLayers(List<Vertex> real, List<Route> routes, Map<Node, Vertex> vertices) {
+        Map<Vertex, List<Vertex>> succ = new IdentityHashMap<>();
+        Map<Vertex, Integer> inDegree = new IdentityHashMap<>();
+        for (Route route : routes) {
+            Vertex tail = vertices.get(route.reversed ? route.edge.to : route.edge.from);
+            Vertex head = vertices.get(route.reversed ? route.edge.from : route.edge.to);
+            succ.computeIfAbsent(tail, v -> new ArrayList<>()).add(head);
+            inDegree.merge(head, 1, Integer::sum);
+        }
+        Map<Vertex, Integer> remaining = new IdentityHashMap<>(inDegree);
+        Deque<Vertex> ready = new ArrayDeque<>();
+        for (Vertex vertex : real) {
+            vertex.layer = 0;
+            if (!remaining.containsKey(vertex)) {
+                ready.add(vertex);
+            }
+        }
+        List<Vertex> topological = new ArrayList<>(real.size());
+        while (!ready.isEmpty()) {
+            Vertex vertex = ready.poll();
+            topological.add(vertex);
+            for (Vertex target : succ.getOrDefault(vertex, List.of())) {
+                target.layer = Math.max(target.layer, vertex.layer + 1);
+                if (remaining.merge(target, -1, Integer::sum) == 0) {
+                    ready.add(target);
+                }
+            }
+        }
+        for (int i = topological.size() - 1; i >= 0; i--) {
+            Vertex vertex = topological.get(i);
+            List<Vertex> targets = succ.getOrDefault(vertex, List.of());
+            if (targets.size() <= inDegree.getOrDefault(vertex, 0)) {
+                continue;
+            }
+            int nearest = Integer.MAX_VALUE;
+            for (Vertex target : targets) {
+                nearest = Math.min(nearest, target.layer);
+            }
+            vertex.layer = Math.max(vertex.layer, nearest - 1);
+        }
+    }
+
+    private static List<List<Vertex>> buildLayers(List<Vertex> real, List<Route> routes, Map<Node, Vertex> vertices) {
+        List<List<Vertex>> layers = new ArrayList<>();
+        for (Vertex vertex : real) {
+            layer(layers, vertex.layer).add(vertex);
+        }
+        for (Route route : routes) {
+            Vertex tail = vertices.get(route.reversed ? route.edge.to : route.edge.from);
+            Vertex head = vertices.get(route.reversed ? route.edge.from : route.edge.to);
+            Vertex previous = tail;
+            for (int l = tail.layer + 1; l < head.layer; l++) {
+                Vertex dummy = new Vertex(null);
+                dummy.layer = l;
+                dummy.size = 2;
+                layer(layers, l).add(dummy);
+                route.chain.add(dummy);
+                previous.out.add(dummy);
+                dummy.in.add(previous);
+                previous = dummy;
+            }
+            previous.out.add(head);
+            head.in.add(previous);
+        }
+        for (List<Vertex> layer : layers) {
+            for (int i = 0; i < layer.size(); i++) {
+                layer.get(i).order = i;
+            }
+        }
+        return layers;
+    }
+
+    private static List<Vertex> layer(List<List<Vertex>> layers, int index) {
+        while (layers.size() <= index) {
+            layers.add(new ArrayList<>());
+        }
+        return layers.get(index);
+    }
+
+    /**
+     * Orders the vertices in each layer with alternating down and up barycenter
+     * sweeps, keeping the order with the fewest crossings. Stops early when a
+     * few sweeps in a row bring no improvement.
+     */
+    private static void orderLayers(List<List<Vertex>> layers) {
+        long best = countCrossings(layers);
+        List<List<Vertex>> bestOrder = copy(layers);
+        int idle = 0;
+        for (int iteration = 0; iteration < ORDER_ITERATIONS && best > 0 && idle < ORDER_PATIENCE; iteration++) {
+            if (iteration % 2 == 0) {
+                for (int l = 1; l < layers.size(); l++) {
+                    sortByBarycenter(layers.get(l), true);
+                }
+            } else {
+                for (int l = layers.size() - 2; l >= 0; l--) {
+                    sortByBarycenter(layers.get(l), false);
+                }
+            }
+            long crossings = countCrossings(layers);
+            if (crossings < best) {
+                best = crossings;
+                bestOrder = copy(layers);
+                idle = 0;
+            } else {
+                idle++;
+            }
+        }
+        layers.clear();
+        layers.addAll(bestOrder);
+        for (List<Vertex> layer : layers) {
+            for (int i = 0; i < layer.size(); i++) {
+                layer.get(i).order = i;
+            }
+        }
+    }
+
+    private static List<List<Vertex>> copy(List<List<Vertex>> layers) {
+        List<List<Vertex>> copy = new ArrayList<>(layers.size());
+        for (List<Vertex> layer : layers) {
+            copy.add(new ArrayList<>(layer));
+        }
+        return copy;
+    }
+
+    private static void sortByBarycenter(List<Vertex> layer, boolean fromIn) {
+        for (Vertex vertex : layer) {
+            List<Vertex> neighbours = fromIn ? vertex.in : vertex.out;
+            if (neighbours.isEmpty()) {
+                vertex.barycenter = vertex.order;
+                continue;
+            }
+            double sum = 0;
+            for (Vertex neighbour : neighbours) {
+                sum += neighbour.order;
+            }
+            vertex.barycenter = sum / neighbours.size();
+        }
+        // Stable sort, so ties keep their current order.
+        layer.sort((a, b) -> Double.compare(a.barycenter, b.barycenter));
+        for (int i = 0; i < layer.size(); i++) {
+            layer.get(i).order = i;
+        }
+    }
+
+    /**
+     * Counts the edge crossings between all pairs of adjacent layers, by
+     * counting inversions with a Fenwick tree.
+     */
+    private static long countCrossings(List<List<Vertex>> layers) {
+        long total = 0;
+        for (int l = 0; l + 1 < layers.size(); l++) {
+            List<Vertex> upper = layers.get(l);
+            int lowerSize = layers.get(l + 1).size();
+            int[] tree = new int[lowerSize + 1];
+            int seen = 0;
+            for (Vertex vertex : upper) {
+                int[] targets = new int[vertex.out.size()];
+                for (int i = 0; i < targets.length; i++) {
+                    targets[i] = vertex.out.get(i).order;
+                }
+                Arrays.sort(targets);
+                for (int target : targets) {
+                    // Edges seen so far that end after this target cross it.
+                    int atOrBefore = 0;
+                    for (int i = target + 1; i > 0; i -= i & -i) {
+                        atOrBefore += tree[i];
+                    }
+                    total += seen - atOrBefore;
+                }
+                for (int target : targets) {
+                    for (int i = target + 1; i <= lowerSize; i += i & -i) {
+                        tree[i]++;
+                    }
+                    seen++;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Places the layers from left to right, and the vertices in each layer
+     * from top to bottom, pulling each vertex towards its neighbours.
+     */
+    private static void place(Graph graph, List<List<Vertex>> layers) {
+        for (List<Vertex> layer : layers) {
+            double pos = MARGIN;
+            Vertex previous = null;
+            for (Vertex vertex : layer) {
+                if (previous != null) {
+                    pos += gap(previous, vertex);
+                }
+                vertex.pos = pos;
+                previous = vertex;
+            }
+        }
+        for (int iteration = 0; iteration < PLACE_ITERATIONS; iteration++) {
+            boolean down = iteration % 2 == 0;
+            for (int i = 0; i < layers.size(); i++) {
+                List<Vertex> layer = layers.get(down ? i : layers.size() - 1 - i);
+                double[] wanted = new double[layer.size()];
+                for (int j = 0; j < layer.size(); j++) {
+                    Vertex vertex = layer.get(j);
+                    List<Vertex> neighbours = down ? vertex.in : vertex.out;
+                    if (neighbours.isEmpty()) {
+                        neighbours = down ? vertex.out : vertex.in;
+                    }
+                    if (neighbours.isEmpty()) {
+                        wanted[j] = vertex.pos;
+                    } else {
+                        double sum = 0;
+                        for (Vertex neighbour : neighbours) {
+                            sum += neighbour.pos;
+                        }
+                        wanted[j] = sum / neighbours.size();
+                    }
+                }
+                separate(layer, wanted);
+            }
+        }
+        double minPos = Double.MAX_VALUE;
+        for (List<Vertex> layer : layers) {
+            if (!layer.isEmpty()) {
+                Vertex first = layer.get(0);
+                minPos = Math.min(minPos, first.pos - first.size / 2);
+            }
+        }
+        double shift = MARGIN - (minPos == Double.MAX_VALUE ? MARGIN : minPos);
+        double x = MARGIN;
+        double maxY = 0;
+        for (List<Vertex> layer : layers) {
+            double layerWidth = 0;
+            for (Vertex vertex : layer) {
+                if (vertex.node != null) {
+                    layerWidth = Math.max(layerWidth, vertex.node.width);
+                }
+            }
+            for (Vertex vertex : layer) {
+                vertex.pos += shift;
+                vertex.x = x + layerWidth / 2;
+                maxY = Math.max(maxY, vertex.pos + vertex.size / 2);
+                if (vertex.node != null) {
+                    vertex.node.x = vertex.x;
+                    vertex.node.y = vertex.pos;
+                }
+            }
+            x += layerWidth + RANK_SEP;
+        }
+        graph.setSize(Math.max(x - RANK_SEP + MARGIN, 2 * MARGIN), maxY + MARGIN);
+    }
+
+    /**
+     * Moves the vertices of a layer as close to their wanted positions as
+     * possible, without overlapping and keeping their order.
+     */
+    private static void separate(List<Vertex> layer, double[] wanted) {
+        int count = layer.size();
+        double[] pos = wanted.clone();
+        for (int j = 1; j < count; j++) {
+            pos[j] = Math.max(pos[j], pos[j - 1] + gap(layer.get(j - 1), layer.get(j)));
+        }
+        for (int j = count - 2; j >= 0; j--) {
+            pos[j] = Math.min(pos[j], pos[j + 1] - gap(layer.get(j), layer.get(j + 1)));
+        }
+        for (int j = 1; j < count; j++) {
+            pos[j] = Math.max(pos[j], pos[j - 1] + gap(layer.get(j - 1), layer.get(j)));
+        }
+        for (int j = 0; j < count; j++) {
+            layer.get(j).pos = pos[j];
+        }
+    }
+
+    /**
+     * The minimal distance between the centres of two neighbouring vertices.
+     * Dummies only carry an edge, so they can be packed tightly.
+     */
+    private static double gap(Vertex a, Vertex b) {
+        boolean dummies = a.node == null && b.node == null;
+        return (a.size + b.size) / 2 + (dummies ? DUMMY_SEP : NODE_SEP);
+    }
+
+    private static void routeEdges(List<Route> routes) {
+        for (Route route : routes) {
+            Node tail = route.reversed ? route.edge.to : route.edge.from;
+            Node head = route.reversed ? route.edge.from : route.edge.to;
+            double[] points = new double[4 + 2 * route.chain.size()];
+            points[0] = tail.x + tail.width / 2;
+            points[1] = tail.y;
+            int p = 2;
+            for (Vertex dummy : route.chain) {
+                points[p++] = dummy.x;
+                points[p++] = dummy.pos;
+            }
+            points[p++] = head.x - head.width / 2;
+            points[p] = head.y;
+            if (route.reversed) {
+                reverse(points);
+            }
+            route.edge.points = points;
+        }
+    }
+
+    private static void reverse(double[] points) {
+        for (int i = 0, j = points.length - 2; i < j; i += 2, j -= 2) {
+            double x = points[i];
+            double y = points[i + 1];
+            points[i] = points[j];
+            points[i + 1] = points[j + 1];
+            points[j] = x;
+            points[j + 1] = y;
+        }
+    }
+}
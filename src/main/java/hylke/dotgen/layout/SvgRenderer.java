@@ -0,0 +1,177 @@
+package hylke.dotgen.layout;
+
+import hylke.dotgen.layout.Graph.Edge;
+import hylke.dotgen.layout.Graph.Node;
+import hylke.dotgen.layout.Graph.Style;
+
+/**
+ * Renders a graph that has been laid out as SVG.
+ *
+ * @author hylke
+ */
+public class SvgRenderer {
+
+    private static final double ROW_HEIGHT = 22;
+
+    /**
+     * Renders the given graph, which must have been laid out.
+     *
+     * @param graph The graph to render.
+     * @param title The title of the drawing.
+     * @return The SVG document.
+     */
+    public String render(Graph graph, String title) {
+        StringBuilder sb = new StringBuilder(1024 + graph.getNodes().size() * 256 + graph.getEdges().size() * 160);
+        sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>\n")
+                .append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(num(graph.getWidth()))
+                .append("pt\" height=\"").append(num(graph.getHeight()))
+                .append("pt\" viewBox=\"0 0 ").append(num(graph.getWidth())).append(' ').append(num(graph.getHeight())).append("\">\n")
+                .append("<title>");
+        escape(sb, title);
+        sb.append("</title>\n")
+                .append("<defs><marker id=\"arrow\" viewBox=\"0 0 10 10\" refX=\"10\" refY=\"5\" markerWidth=\"8\" markerHeight=\"8\" orient=\"auto\">")
+                .append("<path d=\"M0,0 L10,5 L0,10 z\"/></marker></defs>\n")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n")
+                .append("<g font-family=\"Times,serif\" font-size=\"").append(num(LayeredLayout.FONT_SIZE)).append("\" stroke=\"black\" fill=\"none\">\n");
+        for (Edge edge : graph.getEdges()) {
+            renderEdge(sb, edge);
+        }
+        for (Node node : graph.getNodes()) {
+            renderNode(sb, node);
+        }
+        sb.append("</g>\n</svg>\n");
+        return sb.toString();
+    }
+
+    private void renderEdge(StringBuilder sb, Edge edge) {
+        sb.append("<polyline");
+        dash(sb, edge.style);
+        sb.append(" marker-end=\"url(#arrow)\" points=\"");
+        double[] points = edge.points;
+        for (int i = 0; i + 1 < points.length; i += 2) {
+            if (i > 0) {
+                sb.append(' ');
+            }
+            sb.append(num(points[i])).append(',').append(num(points[i + 1]));
+        }
+        sb.append("\"><title>");
+        escape(sb, edge.from.name);
+        sb.append(" -&gt; ");
+        escape(sb, edge.to.name);
+        sb.append("</title></polyline>\n");
+    }
+
+    private void renderNode(StringBuilder sb, Node node) {
+        double left = node.x - node.width / 2;
+        double top = node.y - node.height / 2;
+        sb.append("<g><title>");
+        escape(sb, node.name);
+        sb.append("</title>");
+        switch (node.shape) {
+            case ELLIPSE:
+                sb.append("<ellipse cx=\"").append(num(node.x)).append("\" cy=\"").append(num(node.y))
+                        .append("\" rx=\"").append(num(node.width / 2)).append("\" ry=\"").append(num(node.height / 2)).append('"');
+                dash(sb, node.style);
+                sb.append("/>");
+                renderLines(sb, node, top + (node.height - node.label.size() * ROW_HEIGHT) / 2);
+                break;
+
+            case TABLE:
+                double inset = 4;
+                sb.append("<rect x=\"").append(num(left)).append("\" y=\"").append(num(top))
+                        .append("\" width=\"").append(num(node.width)).append("\" height=\"").append(num(node.height)).append("\"/>");
+                double rowTop = top + inset;
+                for (String line : node.label) {
+                    sb.append("<rect x=\"").append(num(left + inset)).append("\" y=\"").append(num(rowTop))
+                            .append("\" width=\"").append(num(node.width - 2 * inset)).append("\" height=\"").append(num(ROW_HEIGHT)).append("\"/>");
+                    text(sb, node.x, rowTop + ROW_HEIGHT / 2, line);
+                    rowTop += ROW_HEIGHT;
+                }
+                break;
+
+            default:
+                sb.append("<rect x=\"").append(num(left)).append("\" y=\"").append(num(top))
+                        .append("\" width=\"").append(num(node.width)).append("\" height=\"").append(num(node.height)).append('"');
+                dash(sb, node.style);
+                sb.append("/>");
+                renderLines(sb, node, top + (node.height - node.label.size() * ROW_HEIGHT) / 2);
+        }
+        sb.append("</g>\n");
+    }
+
+    private void renderLines(StringBuilder sb, Node node, double top) {
+        double y = top + ROW_HEIGHT / 2;
+        for (String line : node.label) {
+            text(sb, node.x, y, line);
+            y += ROW_HEIGHT;
+        }
+    }
+
+    private void text(StringBuilder sb, double x, double centreY, String text) {
+        sb.append("<text x=\"").append(num(x)).append("\" y=\"").append(num(centreY + LayeredLayout.FONT_SIZE * 0.35))
+                .append("\" text-anchor=\"middle\" stroke=\"none\" fill=\"black\">");
+        escape(sb, text);
+        sb.append("</text>");
+    }
+
+    private static void dash(StringBuilder sb, Style style) {
+        switch (style) {
+            case DASHED:
+                sb.append(" stroke-dasharray=\"5,2\"");
+                break;
+
+            case DOTTED:
+                sb.append(" stroke-dasharray=\"1,5\"");
+                break;
+
+            default:
+            // Solid
+        }
+    }
+
+    /**
+     * Formats a coordinate with one decimal, without going through
+     * String.format.
+     */
+    private static String num(double value) {
+        long tenths = Math.round(value * 10);
+        String sign = tenths < 0 ? "-" : "";
+        tenths = Math.abs(tenths);
+        return sign + (tenths / 10) + "." + (tenths % 10);
+    }
+
+    private static void escape(StringBuilder sb, String text) {
+        if (text == null) {
+            sb.append("null");
+            return;
+        }
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+
+                case '<':
+                    sb.append("&lt;");
+                    break;
+
+                case '>':
+                    sb.append("&gt;");
+                    break;
+
+                case '"':
+                    sb.append("&quot;");
+                    break;
+
+                default:
+                    if (c < 0x20 && c != '\t' && c != '\n' && c != '\r') {
+                        sb.append(' ');
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+    }
+}
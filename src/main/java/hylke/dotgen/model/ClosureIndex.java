@@ -0,0 +1,206 @@
+package hylke.dotgen.model;
+
+import hylke.dotgen.model.GraphStore.IdList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The transitive import closure of all requirement classes in a GraphStore,
+ * computed once.
+ *
+ * The import graph is condensed into its strongly connected components with an
+ * iterative Tarjan search, so import cycles neither loop nor overflow the
+ * stack. Tarjan finds the components with all their imports before them, so a
+ * single pass combines the bitsets of reachable classes, requirements and
+ * recommendations per component. All classes in a cycle share the closure of
+ * their component.
+ *
+ * The bitsets are indexed by the ids of the store, so they iterate in
+ * definition order.
+ *
+ * @author hylke
+ */
+public class ClosureIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClosureIndex.class.getName());
+
+    private final GraphStore store;
+    /**
+     * The component of each class, by class id.
+     */
+    private final int[] component;
+    private final List<BitSet> componentClasses = new ArrayList<>();
+    private final List<BitSet> componentReqs = new ArrayList<>();
+    private final List<BitSet> componentRecs = new ArrayList<>();
+    private final List<List<String>> cycles = new ArrayList<>();
+
+    public ClosureIndex(Data data) {
+        this(new GraphStore(data));
+    }
+
+    public ClosureIndex(GraphStore store) {
+        this.store = store;
+        component = new int[store.getClassCount()];
+        findComponents();
+        logCycles();
+    }
+
+    public GraphStore getStore() {
+        return store;
+    }
+
+    /**
+     * Iterative Tarjan. Components are completed in reverse topological order
+     * of the import graph, so the closures of all imports of a component are
+     * known when it is completed.
+     */
+    private void findComponents() {
+        int count = store.getClassCount();
+        int[] index = new int[count];
+        int[] lowLink = new int[count];
+        int[] nextImport = new int[count];
+        boolean[] onStack = new boolean[count];
+        int[] stack = new int[count];
+        int[] callStack = new int[count];
+        Arrays.fill(index, -1);
+        int stackSize = 0;
+        int counter = 0;
+        for (int root = 0; root < count; root++) {
+            if (index[root] >= 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            index[root] = lowLink[root] = counter++;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int vertex = callStack[depth - 1];
+                IdList imports = store.getImports(vertex);
+                if (nextImport[vertex] < imports.size()) {
+                    int target = imports.get(nextImport[vertex]++);
+                    if (index[target] < 0) {
+                        index[target] = lowLink[target] = counter++;
+                        stack[stackSize++] = target;
+                        onStack[target] = true;
+                        callStack[depth++] = target;
+                    } else if (onStack[target]) {
+                        lowLink[vertex] = Math.min(lowLink[vertex], index[target]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    int parent = callStack[depth - 1];
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[vertex]);
+                }
+                if (lowLink[vertex] == index[vertex]) {
+                    int top = stackSize;
+                    do {
+                        onStack[stack[--stackSize]] = false;
+                    } while (stack[stackSize] != vertex);
+                    completeComponent(Arrays.copyOfRange(stack, stackSize, top));
+                }
+            }
+        }
+    }
+
+    private void completeComponent(int[] members) {
+        int id = componentClasses.size();
+        BitSet reachClasses = new BitSet();
+        BitSet reachReqs = new BitSet();
+        BitSet reachRecs = new BitSet();
+        for (int member : members) {
+            component[member] = id;
+        }
+        boolean selfImport = false;
+        for (int member : members) {
+            reachClasses.set(member);
+            IdList reqs = store.getClassRequirements(member);
+            for (int i = 0; i < reqs.size(); i++) {
+                reachReqs.set(reqs.get(i));
+            }
+            IdList recs = store.getClassRecommendations(member);
+            for (int i = 0; i < recs.size(); i++) {
+                reachRecs.set(recs.get(i));
+            }
+            IdList imports = store.getImports(member);
+            for (int i = 0; i < imports.size(); i++) {
+                int imprt = imports.get(i);
+                int target = component[imprt];
+                if (target == id) {
+                    selfImport |= imprt == member;
+                    continue;
+                }
+                reachClasses.or(componentClasses.get(target));
+                reachReqs.or(componentReqs.get(target));
+                reachRecs.or(componentRecs.get(target));
+            }
+        }
+        componentClasses.add(reachClasses);
+        componentReqs.add(reachReqs);
+        componentRecs.add(reachRecs);
+        if (members.length > 1 || selfImport) {
+            Arrays.sort(members);
+            List<String> cycle = new ArrayList<>(members.length);
+            for (int member : members) {
+                cycle.add(store.getClassDefinition(member).toString());
+            }
+            cycles.add(cycle);
+        }
+    }
+
+    private void logCycles() {
+        for (List<String> cycle : cycles) {
+            if (cycle.size() == 1) {
+                LOGGER.warn("Requirement class {} imports itself", cycle.get(0));
+            } else {
+                LOGGER.warn("Import cycle between {} requirement classes: {}", cycle.size(), String.join(", ", cycle));
+            }
+        }
+    }
+
+    /**
+     * @param classId The id of the class to get the closure of.
+     * @return The ids of the given class and all classes it imports, directly
+     * or indirectly.
+     */
+    public BitSet getClasses(int classId) {
+        return (BitSet) componentClasses.get(component[classId]).clone();
+    }
+
+    /**
+     * @param classId The id of the class to get the closure of.
+     * @return The ids of the requirements of the given class and all classes it
+     * imports, directly or indirectly.
+     */
+    public BitSet getRequirements(int classId) {
+        return (BitSet) componentReqs.get(component[classId]).clone();
+    }
+
+    /**
+     * Checks if a requirement is in the closure of a class, without copying
+     * the closure.
+     *
+     * @param classId The id of the class to check the closure of.
+     * @param reqId The id of the requirement to look for.
+     * @return true if the requirement is in the given class, or in a class it
+     * imports, directly or indirectly.
+     */
+    public boolean containsRequirement(int classId, int reqId) {
+        return componentReqs.get(component[classId]).get(reqId);
+    }
+
+    /**
+     * @param classId The id of the class to get the closure of.
+     * @return The ids of the recommendations of the given class and all classes
+     * it imports, directly or indirectly.
+     */
+    public BitSet getRecommendations(int classId) {
+        return (BitSet) componentRecs.get(component[classId]).clone();
+    }
+}
@@ -1,12 +1,31 @@
 package hylke.dotgen.model;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * The requirements, recommendations and classes of a document.
+ *
+ * The entity maps are concurrent and sorted, and reference counts are updated
+ * atomically, so tables can be handled on multiple threads. Changes that
+ * depend on the order of the tables, like setting a description or adding to
+ * a list, go through {@link #change(Runnable)}. While a table is handled in
+ * deferred mode, see {@link #startTable(int, boolean)}, these changes are
+ * collected, to be applied in table order with
+ * {@link #applyChanges(Collection)}. The result is then the same as when the
+ * tables are handled one by one, in document order.
  *
  * @author hylke
  */
@@ -14,16 +33,80 @@ public class Data {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Data.class.getName());
 
+    private static final AtomicIntegerFieldUpdater<Requerement> REQ_REFS = AtomicIntegerFieldUpdater.newUpdater(Requerement.class, "refCount");
+    private static final AtomicIntegerFieldUpdater<Recommendation> REC_REFS = AtomicIntegerFieldUpdater.newUpdater(Recommendation.class, "refCount");
+    private static final AtomicIntegerFieldUpdater<RequerementClass> CLASS_REFS = AtomicIntegerFieldUpdater.newUpdater(RequerementClass.class, "refCount");
+
+    /**
+     * The changes made while handling one table.
+     */
+    public static class TableChanges {
+
+        private final int tableIndex;
+        private final boolean deferred;
+        private final List<Runnable> changes = new ArrayList<>();
+        private int sequence;
+        private long lookups;
+        private long created;
+
+        private TableChanges(int tableIndex, boolean deferred) {
+            this.tableIndex = tableIndex;
+            this.deferred = deferred;
+        }
+
+        /**
+         * @return The position of the next step of this table, in the order
+         * of a sequential run.
+         */
+        private long nextPosition() {
+            return ((long) tableIndex << 32) | sequence++;
+        }
+
+        public int getTableIndex() {
+            return tableIndex;
+        }
+
+        /**
+         * @return The number of findOrCreate calls made for this table.
+         */
+        public long getLookups() {
+            return lookups;
+        }
+
+        /**
+         * @return The number of entities created for this table.
+         */
+        public long getCreated() {
+            return created;
+        }
+    }
+
     private final String nameSpace;
-    private final Map<String, Requerement> requirements = new TreeMap<>();
-    private final Map<String, Recommendation> recommendations = new TreeMap<>();
-    private final Map<String, RequerementClass> requirementClasses = new TreeMap<>();
-    private final Map<String, ConformanceClass> conformanceClasses = new TreeMap<>();
+    private final ConcurrentNavigableMap<String, Requerement> requirements = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, Recommendation> recommendations = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, RequerementClass> requirementClasses = new ConcurrentSkipListMap<>();
+    private final ConcurrentNavigableMap<String, ConformanceClass> conformanceClasses = new ConcurrentSkipListMap<>();
+    /**
+     * The position of the first lookup of each requirement and requirement
+     * class in deferred mode. In a sequential run, an entity exists at a given
+     * position if it was looked up before it.
+     */
+    private final Map<String, Long> reqsSeen = new ConcurrentHashMap<>();
+    private final Map<String, Long> classesSeen = new ConcurrentHashMap<>();
+    private final ThreadLocal<TableChanges> currentTable = new ThreadLocal<>();
+    /**
+     * The number of findOrCreate calls, for profiling.
+     */
+    private final LongAdder lookupCount = new LongAdder();
 
     public Data(String nameSpace) {
         this.nameSpace = nameSpace;
     }
 
+    public String getNameSpace() {
+        return nameSpace;
+    }
+
     public Map<String, Requerement> getRequirements() {
         return requirements;
     }
@@ -40,55 +123,172 @@ public class Data {
         return conformanceClasses;
     }
 
-    public Requerement findOrCreateRequirement(String definition) {
+    /**
+     * @return The number of findOrCreate calls so far.
+     */
+    public long getLookupCount() {
+        return lookupCount.sum();
+    }
+
+    /**
+     * @return The total number of requirements, recommendations, requirement
+     * classes and conformance classes.
+     */
+    public long getEntityCount() {
+        return (long) requirements.size() + recommendations.size() + requirementClasses.size() + conformanceClasses.size();
+    }
+
+    /**
+     * Starts handling a table on the current thread.
+     *
+     * @param tableIndex The index of the table in the document.
+     * @param deferred Whether to collect the changes that depend on the order
+     * of the tables, instead of applying them directly.
+     */
+    public void startTable(int tableIndex, boolean deferred) {
+        currentTable.set(new TableChanges(tableIndex, deferred));
+    }
+
+    /**
+     * Ends handling a table on the current thread.
+     *
+     * @return The changes of the table, to be applied with
+     * {@link #applyChanges(Collection)} if they were deferred.
+     */
+    public TableChanges endTable() {
+        TableChanges changes = currentTable.get();
+        currentTable.remove();
+        return changes;
+    }
+
+    /**
+     * Applies the deferred changes of the given tables, in table order.
+     *
+     * @param tables The changes of the tables.
+     */
+    public void applyChanges(Collection<TableChanges> tables) {
+        List<TableChanges> sorted = new ArrayList<>(tables);
+        sorted.sort(Comparator.comparingInt(TableChanges::getTableIndex));
+        for (TableChanges table : sorted) {
+            for (Runnable change : table.changes) {
+                change.run();
+            }
+        }
+        reqsSeen.clear();
+        classesSeen.clear();
+    }
+
+    /**
+     * Makes a change that depends on the order of the tables, directly or, if
+     * the current table is deferred, when the changes are applied.
+     *
+     * @param change The change to make.
+     */
+    public void change(Runnable change) {
+        TableChanges table = currentTable.get();
+        if (table == null || !table.deferred) {
+            change.run();
+        } else {
+            table.changes.add(change);
+        }
+    }
+
+    private String stripNameSpace(String definition) {
         if (definition.startsWith(nameSpace)) {
-            definition = definition.substring(nameSpace.length());
+            return definition.substring(nameSpace.length());
+        }
+        return definition;
+    }
+
+    private <T> T findOrCreate(Map<String, T> map, Map<String, Long> seen, String definition, Function<String, T> creator) {
+        lookupCount.increment();
+        TableChanges table = currentTable.get();
+        if (table != null) {
+            table.lookups++;
+            if (table.deferred && seen != null) {
+                seen.merge(definition, table.nextPosition(), Math::min);
+            }
+        }
+        T item = map.get(definition);
+        if (item == null) {
+            T created = creator.apply(definition);
+            item = map.putIfAbsent(definition, created);
+            if (item == null) {
+                item = created;
+                if (table != null) {
+                    table.created++;
+                }
+            }
         }
-        final Requerement item = requirements.computeIfAbsent(definition, t -> new Requerement(t));
-        item.refCount++;
-        LOGGER.trace("    Req {}: {}", item.refCount, definition);
+        return item;
+    }
+
+    public Requerement findOrCreateRequirement(String definition) {
+        definition = stripNameSpace(definition);
+        final Requerement item = findOrCreate(requirements, reqsSeen, definition, Requerement::new);
+        int refCount = REQ_REFS.incrementAndGet(item);
+        LOGGER.trace("    Req {}: {}", refCount, definition);
         return item;
     }
 
     public Recommendation findOrCreateRecommendation(String definition) {
-        if (definition.startsWith(nameSpace)) {
-            definition = definition.substring(nameSpace.length());
-        }
-        final Recommendation item = recommendations.computeIfAbsent(definition, t -> new Recommendation(t));
-        item.refCount++;
-        LOGGER.trace("    Rec {}: {}", item.refCount, definition);
+        definition = stripNameSpace(definition);
+        final Recommendation item = findOrCreate(recommendations, null, definition, Recommendation::new);
+        int refCount = REC_REFS.incrementAndGet(item);
+        LOGGER.trace("    Rec {}: {}", refCount, definition);
         return item;
     }
 
     public RequerementClass findOrCreateRequirementClass(String definition) {
-        if (definition.startsWith(nameSpace)) {
-            definition = definition.substring(nameSpace.length());
-        }
-        final RequerementClass item = requirementClasses.computeIfAbsent(definition, t -> new RequerementClass(t));
-        item.refCount++;
-        LOGGER.trace("    Cls {}: {}", item.refCount, definition);
+        definition = stripNameSpace(definition);
+        final RequerementClass item = findOrCreate(requirementClasses, classesSeen, definition, RequerementClass::new);
+        int refCount = CLASS_REFS.incrementAndGet(item);
+        LOGGER.trace("    Cls {}: {}", refCount, definition);
         return item;
     }
 
     public ConformanceClass findOrCreateConformanceClass(String definition) {
-        if (definition.startsWith(nameSpace)) {
-            definition = definition.substring(nameSpace.length());
-        }
-        return conformanceClasses.computeIfAbsent(definition, t -> new ConformanceClass(t));
+        return findOrCreate(conformanceClasses, null, stripNameSpace(definition), ConformanceClass::new);
     }
 
+    /**
+     * Adds the given images to the requirement class and the requirement with
+     * the given definition, if they exist. When deferred, they are added if
+     * they were looked up before this point of a sequential run.
+     *
+     * @param value The definition of the related class or requirement.
+     * @param mainImages The images to add.
+     */
     public void checkImageForRelation(String value, Set<Image> mainImages) {
-        if (value.startsWith(nameSpace)) {
-            value = value.substring(nameSpace.length());
+        final String definition = stripNameSpace(value);
+        TableChanges table = currentTable.get();
+        if (table == null || !table.deferred) {
+            addImages(definition, mainImages, Long.MAX_VALUE);
+            return;
+        }
+        final long position = table.nextPosition();
+        final Set<Image> images = Image.emptySet();
+        images.addAll(mainImages);
+        table.changes.add(() -> addImages(definition, images, position));
+    }
+
+    private void addImages(String definition, Set<Image> images, long position) {
+        RequerementClass reqClass = requirementClasses.get(definition);
+        if (reqClass != null && seenBefore(classesSeen, definition, position)) {
+            reqClass.inImage.addAll(images);
         }
-        RequerementClass reqClass = requirementClasses.get(value);
-        if (reqClass != null) {
-            reqClass.inImage.addAll(mainImages);
+        Requerement req = requirements.get(definition);
+        if (req != null && seenBefore(reqsSeen, definition, position)) {
+            req.inImage.addAll(images);
         }
-        Requerement req = requirements.get(value);
-        if (req != null) {
-            req.inImage.addAll(mainImages);
+    }
+
+    private static boolean seenBefore(Map<String, Long> seen, String definition, long position) {
+        if (position == Long.MAX_VALUE) {
+            return true;
         }
+        Long first = seen.get(definition);
+        return first != null && first < position;
     }
 
 }
@@ -0,0 +1,224 @@
+package hylke.dotgen.model;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Fingerprints of the entities in a Data instance, used to find out which
+ * generated artifacts are affected when a document is parsed again.
+ *
+ * @author hylke
+ */
+public class DataFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Fingerprints of the requirement classes, as far as they show up in the
+     * graphs.
+     */
+    private final Map<String, Long> classes = new HashMap<>();
+    /**
+     * Fingerprint of the requirement and recommendation nodes in the graphs.
+     */
+    private final long nodes;
+    /**
+     * Fingerprint of all content, including descriptions and counts.
+     */
+    private final long content;
+    /**
+     * The import closures of the data, used to find the classes affected by a
+     * change.
+     */
+    private final ClosureIndex closure;
+
+    public DataFingerprint(Data data) {
+        this(data, new ClosureIndex(data));
+    }
+
+    public DataFingerprint(Data data, ClosureIndex closure) {
+        this.closure = closure;
+        for (RequerementClass reqClass : data.getRequirementClasses().values()) {
+            classes.put(reqClass.definition, classPrint(reqClass));
+        }
+        long nodePrint = FNV_OFFSET;
+        long contentPrint = FNV_OFFSET;
+        for (Requerement req : data.getRequirements().values()) {
+            nodePrint = hash(hash(nodePrint, req.definition), req.inImage.toString());
+            contentPrint = hash(hash(hash(contentPrint, req.definition), req.description), req.refCount);
+            for (RequerementClass reqClass : req.inClass) {
+                contentPrint = hash(contentPrint, reqClass.definition);
+            }
+        }
+        for (Recommendation rec : data.getRecommendations().values()) {
+            nodePrint = hash(hash(nodePrint, rec.definition), rec.inImage.toString());
+            contentPrint = hash(hash(hash(contentPrint, rec.definition), rec.description), rec.refCount);
+        }
+        for (RequerementClass reqClass : data.getRequirementClasses().values()) {
+            contentPrint = hash(hash(contentPrint, classes.get(reqClass.definition)), reqClass.refCount);
+        }
+        for (ConformanceClass confClass : data.getConformanceClasses().values()) {
+            contentPrint = hash(contentPrint, confClass.definition);
+            contentPrint = hash(contentPrint, confClass.purpose);
+            contentPrint = hash(contentPrint, confClass.method);
+            contentPrint = hash(contentPrint, confClass.type);
+            contentPrint = hash(contentPrint, confClass.requirement == null ? null : confClass.requirement.definition);
+        }
+        this.nodes = nodePrint;
+        this.content = contentPrint;
+    }
+
+    private static long classPrint(RequerementClass reqClass) {
+        long print = hash(FNV_OFFSET, reqClass.definition);
+        print = hash(print, reqClass.name);
+        print = hash(print, reqClass.targetType);
+        print = hash(print, reqClass.inImage.toString());
+        print = hashDefinitions(hash(print, "requirements"), reqClass.requirements);
+        print = hashDefinitions(hash(print, "recommendations"), reqClass.recommendations);
+        print = hashDefinitions(hash(print, "imports"), reqClass.imports);
+        print = hash(print, "dependencies");
+        for (String dependency : reqClass.dependencies) {
+            print = hash(print, dependency);
+        }
+        return print;
+    }
+
+    private static long hashDefinitions(long print, Collection<?> items) {
+        for (Object item : items) {
+            if (item instanceof Requerement) {
+                print = hash(print, ((Requerement) item).definition);
+            } else if (item instanceof Recommendation) {
+                print = hash(print, ((Recommendation) item).definition);
+            } else if (item instanceof RequerementClass) {
+                print = hash(print, ((RequerementClass) item).definition);
+            }
+        }
+        return print;
+    }
+
+    private static long hash(long print, String value) {
+        if (value == null) {
+            return hash(print, -1);
+        }
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            print = (print ^ value.charAt(i)) * FNV_PRIME;
+        }
+        // Separator, so that "ab"+"c" differs from "a"+"bc".
+        return (print ^ 0xFFFF) * FNV_PRIME;
+    }
+
+    private static long hash(long print, long value) {
+        for (int i = 0; i < 8; i++) {
+            print = (print ^ (value & 0xff)) * FNV_PRIME;
+            value >>>= 8;
+        }
+        return print;
+    }
+
+    /**
+     * Compares this fingerprint, of the new data, with that of the previous
+     * data.
+     *
+     * @param previous The fingerprint of the previous data, or null if there is
+     * no previous data.
+     * @return The changes.
+     */
+    public Changes changesSince(DataFingerprint previous) {
+        return new Changes(this, previous);
+    }
+
+    /**
+     * What changed between two versions of the data.
+     */
+    public static class Changes {
+
+        private final boolean all;
+        private final ClosureIndex closure;
+        private final Set<String> changedClasses = new HashSet<>();
+        private final Set<String> removedClasses = new HashSet<>();
+        private final boolean nodesChanged;
+        private final boolean contentChanged;
+
+        private Changes(DataFingerprint current, DataFingerprint previous) {
+            all = previous == null;
+            closure = current.closure;
+            if (all) {
+                nodesChanged = true;
+                contentChanged = true;
+                return;
+            }
+            for (Map.Entry<String, Long> entry : current.classes.entrySet()) {
+                if (!Objects.equals(entry.getValue(), previous.classes.get(entry.getKey()))) {
+                    changedClasses.add(entry.getKey());
+                }
+            }
+            for (String definition : previous.classes.keySet()) {
+                if (!current.classes.containsKey(definition)) {
+                    removedClasses.add(definition);
+                }
+            }
+            nodesChanged = current.nodes != previous.nodes;
+            contentChanged = current.content != previous.content;
+        }
+
+        /**
+         * @return true if any requirement class was added, removed or changed.
+         */
+        public boolean isClassesChanged() {
+            return all || !changedClasses.isEmpty() || !removedClasses.isEmpty();
+        }
+
+        /**
+         * @return true if any requirement or recommendation node changed.
+         */
+        public boolean isNodesChanged() {
+            return nodesChanged;
+        }
+
+        /**
+         * @return true if anything at all changed.
+         */
+        public boolean isContentChanged() {
+            return contentChanged;
+        }
+
+        /**
+         * @return The definitions of the classes that no longer exist.
+         */
+        public Set<String> getRemovedClasses() {
+            return removedClasses;
+        }
+
+        /**
+         * Checks if the given class, or any class it imports directly or
+         * indirectly, changed.
+         *
+         * @param classId The id of the class to check, in the GraphStore of the
+         * current data.
+         * @return true if the graph of the class must be regenerated.
+         */
+        public boolean affects(int classId) {
+            if (all) {
+                return true;
+            }
+            if (changedClasses.isEmpty()) {
+                return false;
+            }
+            GraphStore store = closure.getStore();
+            BitSet imported = closure.getClasses(classId);
+            for (int id = imported.nextSetBit(0); id >= 0; id = imported.nextSetBit(id + 1)) {
+                if (changedClasses.contains(store.getClassDefinition(id).toString())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package hylke.dotgen.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads and writes the parsed content of a document in a compact binary form.
+ *
+ * Entities are written in the order of their maps, and references between
+ * entities are written as indexes into those lists. The format version must be
+ * increased whenever the format, or the way the parsers fill the model,
+ * changes.
+ *
+ * @author hylke
+ */
+public class DataSnapshot {
+
+    private static final int MAGIC = 0x4447534E;
+    /**
+     * The version of the snapshot format.
+     */
+    public static final int VERSION = 1;
+
+    private DataSnapshot() {
+        // Utility class
+    }
+
+    /**
+     * Writes the given data.
+     *
+     * @param data The data to write.
+     * @param key The key that identifies the source the data was parsed from.
+     * @param out The stream to write to.
+     * @throws IOException If writing fails.
+     */
+    public static void write(Data data, String key, DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        writeString(out, key);
+        writeString(out, data.getNameSpace());
+
+        Collection<Requerement> reqs = data.getRequirements().values();
+        Collection<Recommendation> recs = data.getRecommendations().values();
+        Collection<RequerementClass> classes = data.getRequirementClasses().values();
+        Collection<ConformanceClass> confClasses = data.getConformanceClasses().values();
+        Map<Object, Integer> reqIds = indexOf(reqs);
+        Map<Object, Integer> recIds = indexOf(recs);
+        Map<Object, Integer> classIds = indexOf(classes);
+
+        out.writeInt(reqs.size());
+        for (Requerement req : reqs) {
+            writeString(out, req.definition);
+            writeString(out, req.description);
+            out.writeByte(imageMask(req.inImage));
+            out.writeInt(req.refCount);
+        }
+        out.writeInt(recs.size());
+        for (Recommendation rec : recs) {
+            writeString(out, rec.definition);
+            writeString(out, rec.description);
+            out.writeByte(imageMask(rec.inImage));
+            out.writeInt(rec.refCount);
+        }
+        out.writeInt(classes.size());
+        for (RequerementClass reqClass : classes) {
+            writeString(out, reqClass.definition);
+            writeString(out, reqClass.targetType);
+            writeString(out, reqClass.name);
+            out.writeByte(imageMask(reqClass.inImage));
+            out.writeInt(reqClass.refCount);
+        }
+        for (RequerementClass reqClass : classes) {
+            out.writeInt(reqClass.dependencies.size());
+            for (String dependency : reqClass.dependencies) {
+                writeString(out, dependency);
+            }
+            writeRefs(out, reqClass.imports, classIds);
+            writeRefs(out, reqClass.requirements, reqIds);
+            writeRefs(out, reqClass.recommendations, recIds);
+        }
+        for (Requerement req : reqs) {
+            writeRefs(out, req.inClass, classIds);
+        }
+        out.writeInt(confClasses.size());
+        for (ConformanceClass confClass : confClasses) {
+            writeString(out, confClass.definition);
+            writeString(out, confClass.purpose);
+            writeString(out, confClass.method);
+            writeString(out, confClass.type);
+            out.writeInt(confClass.requirement == null ? -1 : classIds.get(confClass.requirement));
+        }
+    }
+
+    /**
+     * Reads data written by {@link #write(Data, String, DataOutputStream)}.
+     *
+     * @param key The key the snapshot must have.
+     * @param in The stream to read from.
+     * @return The data, or null if the stream is not a snapshot of the current
+     * version with the given key.
+     * @throws IOException If reading fails.
+     */
+    public static Data read(String key, DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(readString(in))) {
+            return null;
+        }
+        Data data = new Data(readString(in));
+
+        int reqCount = in.readInt();
+        List<Requerement> reqs = new ArrayList<>(reqCount);
+        for (int i = 0; i < reqCount; i++) {
+            Requerement req = new Requerement(readString(in));
+            req.description = readString(in);
+            readImages(in, req.inImage);
+            req.refCount = in.readInt();
+            reqs.add(req);
+            data.getRequirements().put(req.definition, req);
+        }
+        int recCount = in.readInt();
+        List<Recommendation> recs = new ArrayList<>(recCount);
+        for (int i = 0; i < recCount; i++) {
+            Recommendation rec = new Recommendation(readString(in));
+            rec.description = readString(in);
+            readImages(in, rec.inImage);
+            rec.refCount = in.readInt();
+            recs.add(rec);
+            data.getRecommendations().put(rec.definition, rec);
+        }
+        int classCount = in.readInt();
+        List<RequerementClass> classes = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            RequerementClass reqClass = new RequerementClass(readString(in));
+            reqClass.targetType = readString(in);
+            reqClass.name = readString(in);
+            readImages(in, reqClass.inImage);
+            reqClass.refCount = in.readInt();
+            classes.add(reqClass);
+            data.getRequirementClasses().put(reqClass.definition, reqClass);
+        }
+        for (RequerementClass reqClass : classes) {
+            int depCount = in.readInt();
+            for (int i = 0; i < depCount; i++) {
+                reqClass.dependencies.add(readString(in));
+            }
+            readRefs(in, classes, reqClass.imports);
+            readRefs(in, reqs, reqClass.requirements);
+            readRefs(in, recs, reqClass.recommendations);
+        }
+        for (Requerement req : reqs) {
+            readRefs(in, classes, req.inClass);
+        }
+        int confCount = in.readInt();
+        for (int i = 0; i < confCount; i++) {
+            ConformanceClass confClass = new ConformanceClass(readString(in));
+            confClass.purpose = readString(in);
+            confClass.method = readString(in);
+            confClass.type = readString(in);
+            int reqClass = in.readInt();
+            confClass.requirement = reqClass < 0 ? null : classes.get(reqClass);
+            data.getConformanceClasses().put(confClass.definition, confClass);
+        }
+        return data;
+    }
+
+    private static Map<Object, Integer> indexOf(Collection<?> items) {
+        Map<Object, Integer> ids = new IdentityHashMap<>();
+        for (Object item : items) {
+            ids.put(item, ids.size());
+        }
+        return ids;
+    }
+
+    private static void writeRefs(DataOutputStream out, Collection<?> refs, Map<Object, Integer> ids) throws IOException {
+        out.writeInt(refs.size());
+        for (Object ref : refs) {
+            Integer id = ids.get(ref);
+            if (id == null) {
+                throw new IOException("Referenced entity is not in the data: " + ref);
+            }
+            out.writeInt(id);
+        }
+    }
+
+    private static <T> void readRefs(DataInputStream in, List<T> items, Collection<T> target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.add(items.get(in.readInt()));
+        }
+    }
+
+    private static int imageMask(Set<Image> images) {
+        int mask = 0;
+        for (Image image : images) {
+            mask |= 1 << image.ordinal();
+        }
+        return mask;
+    }
+
+    private static void readImages(DataInputStream in, Set<Image> target) throws IOException {
+        int mask = in.readUnsignedByte();
+        target.clear();
+        for (Image image : Image.values()) {
+            if ((mask & (1 << image.ordinal())) != 0) {
+                target.add(image);
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,467 @@
+package hylke.dotgen.model;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A compact, read-only copy of a Data instance, that replaces the Data once
+ * it is built.
+ *
+ * Requirement classes, requirements, recommendations and conformance classes
+ * get dense int ids, in the (sorted) order of the maps in Data. Relations are stored in CSR form: an
+ * offsets array per relation and one flat array of target ids, in the order of
+ * the original lists. Image membership is stored as a bitmask per entity.
+ * All text lives in a StringArena, with prefix compression for the definition
+ * paths, and is decoded lazily. Definitions are looked up by binary search, so
+ * no hash maps are kept after building.
+ *
+ * @author hylke
+ */
+public class GraphStore {
+
+    /**
+     * A read-only slice of an id array.
+     */
+    public static final class IdList {
+
+        private final int[] ids;
+        private final int from;
+        private final int to;
+
+        private IdList(int[] ids, int from, int to) {
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public int get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + (to - from));
+            }
+            return ids[from + index];
+        }
+    }
+
+    /**
+     * All text, definitions with prefix compression.
+     */
+    private final StringArena text = new StringArena();
+    private final String nameSpace;
+    private final int[] classDefs;
+    private final int[] classNames;
+    private final int[] classTargetTypes;
+    private final int[] reqDefs;
+    private final int[] reqDescriptions;
+    private final int[] recDefs;
+    private final int[] recDescriptions;
+    private final int[] confDefs;
+    private final int[] confPurposes;
+    private final int[] confMethods;
+    private final int[] confTypes;
+    /**
+     * The id of the requirement class of each conformance class, or -1.
+     */
+    private final int[] confClasses;
+
+    private final int[] classRefCounts;
+    private final int[] reqRefCounts;
+    private final int[] recRefCounts;
+
+    private final byte[] classImages;
+    private final byte[] reqImages;
+    private final byte[] recImages;
+
+    private final int[] importOffsets;
+    private final int[] imports;
+    private final int[] classReqOffsets;
+    private final int[] classReqs;
+    private final int[] classRecOffsets;
+    private final int[] classRecs;
+    private final int[] reqClassOffsets;
+    private final int[] reqClasses;
+    private final int[] dependencyOffsets;
+    private final int[] dependencies;
+
+    public GraphStore(Data data) {
+        Collection<RequerementClass> classList = data.getRequirementClasses().values();
+        Collection<Requerement> reqList = data.getRequirements().values();
+        Collection<Recommendation> recList = data.getRecommendations().values();
+        Collection<ConformanceClass> confList = data.getConformanceClasses().values();
+        nameSpace = data.getNameSpace();
+        int classCount = classList.size();
+        classDefs = new int[classCount];
+        classNames = new int[classCount];
+        classTargetTypes = new int[classCount];
+        classImages = new byte[classCount];
+        classRefCounts = new int[classCount];
+        Map<String, Integer> classIds = new HashMap<>();
+        int c = 0;
+        for (RequerementClass reqClass : classList) {
+            classDefs[c] = text.internPath(reqClass.definition);
+            classNames[c] = internNullable(reqClass.name);
+            classTargetTypes[c] = internNullable(reqClass.targetType);
+            classImages[c] = mask(reqClass.inImage);
+            classRefCounts[c] = reqClass.refCount;
+            classIds.put(reqClass.definition, c);
+            c++;
+        }
+        reqDefs = new int[reqList.size()];
+        reqDescriptions = new int[reqList.size()];
+        reqImages = new byte[reqList.size()];
+        reqRefCounts = new int[reqList.size()];
+        Map<String, Integer> reqIds = new HashMap<>();
+        int r = 0;
+        for (Requerement req : reqList) {
+            reqDefs[r] = text.internPath(req.definition);
+            reqDescriptions[r] = internNullable(req.description);
+            reqImages[r] = mask(req.inImage);
+            reqRefCounts[r] = req.refCount;
+            reqIds.put(req.definition, r);
+            r++;
+        }
+        recDefs = new int[recList.size()];
+        recDescriptions = new int[recList.size()];
+        recImages = new byte[recList.size()];
+        recRefCounts = new int[recList.size()];
+        Map<String, Integer> recIds = new HashMap<>();
+        int q = 0;
+        for (Recommendation rec : recList) {
+            recDefs[q] = text.internPath(rec.definition);
+            recDescriptions[q] = internNullable(rec.description);
+            recImages[q] = mask(rec.inImage);
+            recRefCounts[q] = rec.refCount;
+            recIds.put(rec.definition, q);
+            q++;
+        }
+        confDefs = new int[confList.size()];
+        confPurposes = new int[confList.size()];
+        confMethods = new int[confList.size()];
+        confTypes = new int[confList.size()];
+        confClasses = new int[confList.size()];
+        int f = 0;
+        for (ConformanceClass confClass : confList) {
+            confDefs[f] = text.internPath(confClass.definition);
+            confPurposes[f] = internNullable(confClass.purpose);
+            confMethods[f] = internNullable(confClass.method);
+            confTypes[f] = internNullable(confClass.type);
+            confClasses[f] = confClass.requirement == null ? -1 : require(classIds, confClass.requirement.definition);
+            f++;
+        }
+
+        importOffsets = new int[classCount + 1];
+        classReqOffsets = new int[classCount + 1];
+        classRecOffsets = new int[classCount + 1];
+        dependencyOffsets = new int[classCount + 1];
+        c = 0;
+        for (RequerementClass reqClass : classList) {
+            importOffsets[c + 1] = importOffsets[c] + reqClass.imports.size();
+            classReqOffsets[c + 1] = classReqOffsets[c] + reqClass.requirements.size();
+            classRecOffsets[c + 1] = classRecOffsets[c] + reqClass.recommendations.size();
+            dependencyOffsets[c + 1] = dependencyOffsets[c] + reqClass.dependencies.size();
+            c++;
+        }
+        imports = new int[importOffsets[classCount]];
+        classReqs = new int[classReqOffsets[classCount]];
+        classRecs = new int[classRecOffsets[classCount]];
+        dependencies = new int[dependencyOffsets[classCount]];
+        c = 0;
+        for (RequerementClass reqClass : classList) {
+            int i = importOffsets[c];
+            for (RequerementClass imprt : reqClass.imports) {
+                imports[i++] = require(classIds, imprt.definition);
+            }
+            i = classReqOffsets[c];
+            for (Requerement req : reqClass.requirements) {
+                classReqs[i++] = require(reqIds, req.definition);
+            }
+            i = classRecOffsets[c];
+            for (Recommendation rec : reqClass.recommendations) {
+                classRecs[i++] = require(recIds, rec.definition);
+            }
+            i = dependencyOffsets[c];
+            for (String dependency : reqClass.dependencies) {
+                dependencies[i++] = text.internPath(dependency);
+            }
+            c++;
+        }
+
+        reqClassOffsets = new int[reqDefs.length + 1];
+        r = 0;
+        for (Requerement req : reqList) {
+            reqClassOffsets[r + 1] = reqClassOffsets[r] + req.inClass.size();
+            r++;
+        }
+        reqClasses = new int[reqClassOffsets[reqDefs.length]];
+        r = 0;
+        for (Requerement req : reqList) {
+            int i = reqClassOffsets[r];
+            for (RequerementClass reqClass : req.inClass) {
+                reqClasses[i++] = require(classIds, reqClass.definition);
+            }
+            r++;
+        }
+        text.freeze();
+    }
+
+    private int internNullable(String value) {
+        return value == null ? -1 : text.intern(value);
+    }
+
+    private CharSequence getText(int textId) {
+        return textId < 0 ? null : text.get(textId);
+    }
+
+    private static byte mask(Set<Image> images) {
+        int mask = 0;
+        for (Image image : images) {
+            mask |= 1 << image.ordinal();
+        }
+        return (byte) mask;
+    }
+
+    private static int require(Map<String, Integer> ids, String definition) {
+        Integer id = ids.get(definition);
+        if (id == null) {
+            throw new IllegalArgumentException("Definition not found in the model: " + definition);
+        }
+        return id;
+    }
+
+    /**
+     * Binary search over the definitions, which are sorted.
+     */
+    private int find(int[] definitions, String definition) {
+        int low = 0;
+        int high = definitions.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int compare = text.toString(definitions[mid]).compareTo(definition);
+            if (compare < 0) {
+                low = mid + 1;
+            } else if (compare > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public int getClassCount() {
+        return classDefs.length;
+    }
+
+    public int getRequirementCount() {
+        return reqDefs.length;
+    }
+
+    public int getRecommendationCount() {
+        return recDefs.length;
+    }
+
+    public int getConformanceClassCount() {
+        return confDefs.length;
+    }
+
+    public String getNameSpace() {
+        return nameSpace;
+    }
+
+    /**
+     * @param definition The definition to look for.
+     * @return The id of the requirement class, or -1 if there is none.
+     */
+    public int getClassId(String definition) {
+        return find(classDefs, definition);
+    }
+
+    /**
+     * @param definition The definition to look for.
+     * @return The id of the requirement, or -1 if there is none.
+     */
+    public int getRequirementId(String definition) {
+        return find(reqDefs, definition);
+    }
+
+    /**
+     * @param definition The definition to look for.
+     * @return The id of the recommendation, or -1 if there is none.
+     */
+    public int getRecommendationId(String definition) {
+        return find(recDefs, definition);
+    }
+
+    /**
+     * @param definition The definition to look for.
+     * @return The id of the conformance class, or -1 if there is none.
+     */
+    public int getConformanceClassId(String definition) {
+        return find(confDefs, definition);
+    }
+
+    public CharSequence getClassDefinition(int classId) {
+        return text.get(classDefs[classId]);
+    }
+
+    public CharSequence getClassName(int classId) {
+        return getText(classNames[classId]);
+    }
+
+    public CharSequence getClassTargetType(int classId) {
+        return getText(classTargetTypes[classId]);
+    }
+
+    public CharSequence getRequirementDefinition(int reqId) {
+        return text.get(reqDefs[reqId]);
+    }
+
+    public CharSequence getRequirementDescription(int reqId) {
+        return getText(reqDescriptions[reqId]);
+    }
+
+    public CharSequence getRecommendationDefinition(int recId) {
+        return text.get(recDefs[recId]);
+    }
+
+    public CharSequence getRecommendationDescription(int recId) {
+        return getText(recDescriptions[recId]);
+    }
+
+    public CharSequence getConformanceClassDefinition(int confId) {
+        return text.get(confDefs[confId]);
+    }
+
+    public CharSequence getConformanceClassPurpose(int confId) {
+        return getText(confPurposes[confId]);
+    }
+
+    public CharSequence getConformanceClassMethod(int confId) {
+        return getText(confMethods[confId]);
+    }
+
+    public CharSequence getConformanceClassType(int confId) {
+        return getText(confTypes[confId]);
+    }
+
+    /**
+     * @param confId The id of the conformance class.
+     * @return The id of the requirement class of the conformance class, or -1
+     * if it has none.
+     */
+    public int getConformanceClassClass(int confId) {
+        return confClasses[confId];
+    }
+
+    public int getClassRefCount(int classId) {
+        return classRefCounts[classId];
+    }
+
+    public int getRequirementRefCount(int reqId) {
+        return reqRefCounts[reqId];
+    }
+
+    public int getRecommendationRefCount(int recId) {
+        return recRefCounts[recId];
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @return The images of the class, as a bitmask of the ordinals.
+     */
+    public int getClassImages(int classId) {
+        return classImages[classId];
+    }
+
+    /**
+     * @param reqId The id of the requirement.
+     * @return The images of the requirement, as a bitmask of the ordinals.
+     */
+    public int getRequirementImages(int reqId) {
+        return reqImages[reqId];
+    }
+
+    /**
+     * @param recId The id of the recommendation.
+     * @return The images of the recommendation, as a bitmask of the ordinals.
+     */
+    public int getRecommendationImages(int recId) {
+        return recImages[recId];
+    }
+
+    public boolean isClassInImage(int classId, Image image) {
+        return (classImages[classId] & (1 << image.ordinal())) != 0;
+    }
+
+    public boolean isRequirementInImage(int reqId, Image image) {
+        return (reqImages[reqId] & (1 << image.ordinal())) != 0;
+    }
+
+    public boolean isRecommendationInImage(int recId, Image image) {
+        return (recImages[recId] & (1 << image.ordinal())) != 0;
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @return The ids of the classes imported by the class.
+     */
+    public IdList getImports(int classId) {
+        return new IdList(imports, importOffsets[classId], importOffsets[classId + 1]);
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @return The ids of the requirements of the class.
+     */
+    public IdList getClassRequirements(int classId) {
+        return new IdList(classReqs, classReqOffsets[classId], classReqOffsets[classId + 1]);
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @return The ids of the recommendations of the class.
+     */
+    public IdList getClassRecommendations(int classId) {
+        return new IdList(classRecs, classRecOffsets[classId], classRecOffsets[classId + 1]);
+    }
+
+    /**
+     * @param reqId The id of the requirement.
+     * @return The ids of the classes the requirement is in.
+     */
+    public IdList getRequirementClasses(int reqId) {
+        return new IdList(reqClasses, reqClassOffsets[reqId], reqClassOffsets[reqId + 1]);
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @return The number of unresolved dependencies of the class.
+     */
+    public int getDependencyCount(int classId) {
+        return dependencyOffsets[classId + 1] - dependencyOffsets[classId];
+    }
+
+    /**
+     * @param classId The id of the requirement class.
+     * @param index The index of the dependency.
+     * @return The unresolved dependency of the class with the given index.
+     */
+    public CharSequence getDependency(int classId, int index) {
+        if (index < 0 || index >= getDependencyCount(classId)) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + getDependencyCount(classId));
+        }
+        return text.get(dependencies[dependencyOffsets[classId] + index]);
+    }
+
+    /**
+     * @return The arena holding all text of this store.
+     */
+    public StringArena getText() {
+        return text;
+    }
+}
@@ -12,7 +12,7 @@ public class Recommendation implements Comparable<Recommendation> {
     public final String definition;
     public String description = "";
     public final Set<Image> inImage = Image.emptySet();
-    public int refCount = -1;
+    public volatile int refCount = -1;
 
     public Recommendation(String definition) {
         this.definition = definition;
@@ -14,7 +14,7 @@ public class Requerement {
     public String description = "";
     public final Set<Image> inImage = Image.emptySet();
     public final Set<RequerementClass> inClass = new TreeSet<>();
-    public int refCount = -1;
+    public volatile int refCount = -1;
 
     public Requerement(String definition) {
         this.definition = definition;
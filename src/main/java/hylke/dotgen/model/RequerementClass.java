@@ -18,7 +18,7 @@ public class RequerementClass implements Comparable<RequerementClass> {
     public final List<Requerement> requirements = new ArrayList<>();
     public final List<Recommendation> recommendations = new ArrayList<>();
     public final Set<Image> inImage = Image.emptySet();
-    public int refCount = -1;
+    public volatile int refCount = -1;
 
     public RequerementClass(String definition) {
         this.definition = definition;
@@ -0,0 +1,275 @@
+package hylke.dotgen.model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interned text, stored as UTF-8 in large byte pages.
+ *
+ * Paths, like definitions, are stored with shared-prefix compression: each
+ * path only stores its last segment, plus a reference to the entry of its
+ * parent path. "/req/obs-core/AbstractObservation" stores
+ * "/AbstractObservation" and refers to "/req/obs-core", which in turn refers
+ * to "/req". Other text is stored as a whole.
+ *
+ * Entries are identified by an int id. The text is decoded lazily, by the
+ * CharSequence views returned by {@link #get(int)}. For ASCII text, length and
+ * charAt are answered from the bytes directly.
+ *
+ * Interning is not thread safe. After {@link #freeze()}, the arena is
+ * read-only and can be read from multiple threads.
+ *
+ * @author hylke
+ */
+public class StringArena {
+
+    private static final int PAGE_SIZE = 1 << 16;
+    private static final int NO_PARENT = -1;
+
+    private final List<byte[]> pages = new ArrayList<>();
+    private byte[] currentPage;
+    private int currentPageIndex;
+    private int currentUsed;
+
+    private int count;
+    private int[] parents = new int[64];
+    private int[] pageIndexes = new int[64];
+    private int[] offsets = new int[64];
+    private int[] lengths = new int[64];
+    /**
+     * The number of bytes of the full text, including the parents.
+     */
+    private int[] totalLengths = new int[64];
+    /**
+     * Whether the full text, including the parents, is ASCII.
+     */
+    private boolean[] ascii = new boolean[64];
+
+    private Map<String, Integer> index = new HashMap<>();
+
+    /**
+     * Interns the given text as a whole.
+     *
+     * @param text The text to intern.
+     * @return The id of the text.
+     */
+    public int intern(String text) {
+        Integer id = lookup(text);
+        if (id != null) {
+            return id;
+        }
+        return add(text, NO_PARENT, text);
+    }
+
+    /**
+     * Interns the given path, sharing the storage of its parent paths with all
+     * other paths that have the same parents.
+     *
+     * @param path The path to intern.
+     * @return The id of the path.
+     */
+    public int internPath(String path) {
+        Integer id = lookup(path);
+        if (id != null) {
+            return id;
+        }
+        int split = path.lastIndexOf('/');
+        if (split <= 0) {
+            return add(path, NO_PARENT, path);
+        }
+        int parent = internPath(path.substring(0, split));
+        return add(path, parent, path.substring(split));
+    }
+
+    private Integer lookup(String text) {
+        if (index == null) {
+            throw new IllegalStateException("The arena is frozen");
+        }
+        return index.get(text);
+    }
+
+    private int add(String text, int parent, String suffix) {
+        byte[] bytes = suffix.getBytes(StandardCharsets.UTF_8);
+        if (count == parents.length) {
+            int size = count * 2;
+            parents = Arrays.copyOf(parents, size);
+            pageIndexes = Arrays.copyOf(pageIndexes, size);
+            offsets = Arrays.copyOf(offsets, size);
+            lengths = Arrays.copyOf(lengths, size);
+            totalLengths = Arrays.copyOf(totalLengths, size);
+            ascii = Arrays.copyOf(ascii, size);
+        }
+        int id = count++;
+        store(id, bytes);
+        parents[id] = parent;
+        lengths[id] = bytes.length;
+        totalLengths[id] = bytes.length + (parent == NO_PARENT ? 0 : totalLengths[parent]);
+        ascii[id] = bytes.length == suffix.length() && (parent == NO_PARENT || ascii[parent]);
+        index.put(text, id);
+        return id;
+    }
+
+    private void store(int id, byte[] bytes) {
+        if (bytes.length > PAGE_SIZE / 4) {
+            // Large texts get a page of their own.
+            pages.add(bytes);
+            pageIndexes[id] = pages.size() - 1;
+            offsets[id] = 0;
+            return;
+        }
+        if (currentPage == null || currentUsed + bytes.length > currentPage.length) {
+            currentPage = new byte[PAGE_SIZE];
+            currentUsed = 0;
+            pages.add(currentPage);
+            currentPageIndex = pages.size() - 1;
+        }
+        System.arraycopy(bytes, 0, currentPage, currentUsed, bytes.length);
+        pageIndexes[id] = currentPageIndex;
+        offsets[id] = currentUsed;
+        currentUsed += bytes.length;
+    }
+
+    /**
+     * Drops the lookup table used for interning, and trims the entry arrays.
+     * After this, no more text can be added.
+     */
+    public void freeze() {
+        index = null;
+        parents = Arrays.copyOf(parents, count);
+        pageIndexes = Arrays.copyOf(pageIndexes, count);
+        offsets = Arrays.copyOf(offsets, count);
+        lengths = Arrays.copyOf(lengths, count);
+        totalLengths = Arrays.copyOf(totalLengths, count);
+        ascii = Arrays.copyOf(ascii, count);
+        if (currentPage != null && currentUsed < currentPage.length) {
+            byte[] trimmed = Arrays.copyOf(currentPage, currentUsed);
+            pages.set(currentPageIndex, trimmed);
+            currentPage = trimmed;
+        }
+    }
+
+    /**
+     * @return The number of entries, including parent paths.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return The number of bytes used for the text itself.
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (byte[] page : pages) {
+            size += page.length;
+        }
+        return size;
+    }
+
+    /**
+     * @param id The id of the text.
+     * @return A view on the text, decoded lazily.
+     */
+    public CharSequence get(int id) {
+        return new Text(id);
+    }
+
+    /**
+     * Decodes the text with the given id.
+     *
+     * @param id The id of the text.
+     * @return The decoded text.
+     */
+    public String toString(int id) {
+        byte[] bytes = new byte[totalLengths[id]];
+        int end = bytes.length;
+        for (int entry = id; entry != NO_PARENT; entry = parents[entry]) {
+            end -= lengths[entry];
+            System.arraycopy(pages.get(pageIndexes[entry]), offsets[entry], bytes, end, lengths[entry]);
+        }
+        return new String(bytes, ascii[id] ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    private byte asciiByteAt(int id, int position) {
+        int entry = id;
+        int start = totalLengths[entry] - lengths[entry];
+        while (position < start) {
+            entry = parents[entry];
+            start = totalLengths[entry] - lengths[entry];
+        }
+        return pages.get(pageIndexes[entry])[offsets[entry] + position - start];
+    }
+
+    /**
+     * A lazily decoded view on an entry of the arena.
+     */
+    private final class Text implements CharSequence {
+
+        private final int id;
+        private String decoded;
+
+        Text(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public int length() {
+            if (ascii[id]) {
+                return totalLengths[id];
+            }
+            return toString().length();
+        }
+
+        @Override
+        public char charAt(int position) {
+            if (ascii[id]) {
+                if (position < 0 || position >= totalLengths[id]) {
+                    throw new IndexOutOfBoundsException("Index " + position + " out of bounds for length " + totalLengths[id]);
+                }
+                return (char) asciiByteAt(id, position);
+            }
+            return toString().charAt(position);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            if (decoded == null) {
+                decoded = StringArena.this.toString(id);
+            }
+            return decoded;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Text)) {
+                return false;
+            }
+            Text other = (Text) obj;
+            if (other.arena() == StringArena.this) {
+                return other.id == id;
+            }
+            return toString().equals(other.toString());
+        }
+
+        @Override
+        public int hashCode() {
+            return toString().hashCode();
+        }
+
+        private StringArena arena() {
+            return StringArena.this;
+        }
+    }
+}
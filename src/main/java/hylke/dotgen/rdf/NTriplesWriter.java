@@ -0,0 +1,59 @@
+package hylke.dotgen.rdf;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes N-Triples: every statement on its own line, with full iris.
+ *
+ * @author hylke
+ */
+public class NTriplesWriter extends RdfWriter {
+
+    public NTriplesWriter(Writer out) {
+        super(out);
+    }
+
+    @Override
+    public void writeHeader() {
+        // N-Triples has no header.
+    }
+
+    private void start(String subject, String predicate) throws IOException {
+        writeIri(subject);
+        out.write(' ');
+        writeIri(predicate);
+        out.write(' ');
+    }
+
+    @Override
+    public NTriplesWriter iri(String subject, String predicate, String object) throws IOException {
+        start(subject, predicate);
+        writeIri(object);
+        out.write(" .\n");
+        return this;
+    }
+
+    @Override
+    public NTriplesWriter literal(String subject, String predicate, String value) throws IOException {
+        start(subject, predicate);
+        writeString(value);
+        out.write(" .\n");
+        return this;
+    }
+
+    @Override
+    public NTriplesWriter typed(String subject, String predicate, String value, String datatype) throws IOException {
+        start(subject, predicate);
+        writeString(value);
+        out.write("^^");
+        writeIri(datatype);
+        out.write(" .\n");
+        return this;
+    }
+
+    @Override
+    public void finish() {
+        // Every line is complete.
+    }
+}
@@ -0,0 +1,51 @@
+package hylke.dotgen.rdf;
+
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * The RDF serialisations that can be written.
+ *
+ * @author hylke
+ */
+public enum RdfFormat {
+    /**
+     * Turtle, with prefixed names and grouped subjects.
+     */
+    TURTLE("ttl"),
+    /**
+     * N-Triples, one complete triple per line, for bulk loading.
+     */
+    NTRIPLES("nt");
+
+    private final String extension;
+
+    private RdfFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * @return The usual file extension, without dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Creates a writer for this format.
+     *
+     * @param out The writer to write to.
+     * @param prefixes The prefixes to use, by namespace iri. Only used by
+     * formats that support prefixes.
+     * @return The new writer.
+     */
+    public RdfWriter createWriter(Writer out, Map<String, String> prefixes) {
+        switch (this) {
+            case NTRIPLES:
+                return new NTriplesWriter(out);
+            case TURTLE:
+            default:
+                return new TurtleWriter(out, prefixes);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package hylke.dotgen.rdf;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RDF statements to a Writer as they are given, without keeping them
+ * in memory.
+ *
+ * Statements about the same subject should be given one after the other, so
+ * that formats that group them can do so. Iris are given in full, and are
+ * escaped by the writer.
+ *
+ * @author hylke
+ */
+public abstract class RdfWriter {
+
+    public static final String RDF_TYPE = "http://www.w3.org/1999/02/22-rdf-syntax-ns#type";
+
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    protected final Writer out;
+
+    protected RdfWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the header of the document, like the prefix declarations. Only
+     * needed once per document, also when the statements are written in
+     * sections.
+     *
+     * @throws IOException If writing fails.
+     */
+    public abstract void writeHeader() throws IOException;
+
+    /**
+     * Writes a statement with an iri as object.
+     *
+     * @param subject The subject iri.
+     * @param predicate The predicate iri.
+     * @param object The object iri.
+     * @return this.
+     * @throws IOException If writing fails.
+     */
+    public abstract RdfWriter iri(String subject, String predicate, String object) throws IOException;
+
+    /**
+     * Writes a statement with a plain string literal as object.
+     *
+     * @param subject The subject iri.
+     * @param predicate The predicate iri.
+     * @param value The value of the literal.
+     * @return this.
+     * @throws IOException If writing fails.
+     */
+    public abstract RdfWriter literal(String subject, String predicate, String value) throws IOException;
+
+    /**
+     * Writes a statement with a typed literal as object.
+     *
+     * @param subject The subject iri.
+     * @param predicate The predicate iri.
+     * @param value The lexical value of the literal.
+     * @param datatype The datatype iri.
+     * @return this.
+     * @throws IOException If writing fails.
+     */
+    public abstract RdfWriter typed(String subject, String predicate, String value, String datatype) throws IOException;
+
+    /**
+     * Ends the last statement. The writer itself is not closed.
+     *
+     * @throws IOException If writing fails.
+     */
+    public abstract void finish() throws IOException;
+
+    /**
+     * Writes an iri in angle brackets. Characters that are not allowed in an
+     * iri are percent-encoded, so the result is a valid iri and not only
+     * valid syntax.
+     *
+     * @param iri The iri to write.
+     * @throws IOException If writing fails.
+     */
+    protected void writeIri(String iri) throws IOException {
+        out.write('<');
+        int length = iri.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = iri.charAt(i);
+            if (c <= 0x20 || c == '<' || c == '>' || c == '"' || c == '{' || c == '}'
+                    || c == '|' || c == '^' || c == '`' || c == '\\' || c == 0x7F) {
+                out.write(iri, start, i - start);
+                out.write('%');
+                out.write(HEX[c >> 4]);
+                out.write(HEX[c & 0xF]);
+                start = i + 1;
+            }
+        }
+        out.write(iri, start, length - start);
+        out.write('>');
+    }
+
+    /**
+     * Writes a string literal in double quotes, with escapes for the quote,
+     * the backslash and control characters.
+     *
+     * @param value The value to write.
+     * @throws IOException If writing fails.
+     */
+    protected void writeString(String value) throws IOException {
+        out.write('"');
+        int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            switch (c) {
+                case '"':
+                    escape = "\\\"";
+                    break;
+                case '\\':
+                    escape = "\\\\";
+                    break;
+                case '\n':
+                    escape = "\\n";
+                    break;
+                case '\r':
+                    escape = "\\r";
+                    break;
+                case '\t':
+                    escape = "\\t";
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x7F) {
+                        escape = String.format("\\u%04X", (int) c);
+                    } else {
+                        continue;
+                    }
+            }
+            out.write(value, start, i - start);
+            out.write(escape);
+            start = i + 1;
+        }
+        out.write(value, start, length - start);
+        out.write('"');
+    }
+}
@@ -0,0 +1,144 @@
+package hylke.dotgen.rdf;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes Turtle. Iris in one of the given namespaces are written as prefixed
+ * names, rdf:type as "a". Consecutive statements with the same subject are
+ * grouped with ";", and with the same predicate as well with ",".
+ *
+ * @author hylke
+ */
+public class TurtleWriter extends RdfWriter {
+
+    /**
+     * The namespaces and their prefixes, longest namespace first, so the most
+     * specific one wins.
+     */
+    private final List<Map.Entry<String, String>> namespaces = new ArrayList<>();
+    private String currentSubject;
+    private String currentPredicate;
+
+    /**
+     * @param out The writer to write to.
+     * @param prefixes The prefixes to use, by namespace iri.
+     */
+    public TurtleWriter(Writer out, Map<String, String> prefixes) {
+        super(out);
+        namespaces.addAll(prefixes.entrySet());
+        namespaces.sort((a, b) -> b.getKey().length() - a.getKey().length());
+    }
+
+    @Override
+    public void writeHeader() throws IOException {
+        List<Map.Entry<String, String>> sorted = new ArrayList<>(namespaces);
+        sorted.sort(Map.Entry.comparingByValue());
+        for (Map.Entry<String, String> entry : sorted) {
+            out.write("@prefix ");
+            out.write(entry.getValue());
+            out.write(": ");
+            writeIri(entry.getKey());
+            out.write(" .\n");
+        }
+        out.write('\n');
+    }
+
+    /**
+     * Starts a statement, continuing the group of the previous statement if
+     * it has the same subject.
+     */
+    private void start(String subject, String predicate) throws IOException {
+        if (subject.equals(currentSubject)) {
+            if (predicate.equals(currentPredicate)) {
+                out.write(",\n        ");
+                return;
+            }
+            out.write(" ;\n    ");
+        } else {
+            finish();
+            writeTerm(subject);
+            out.write(' ');
+            currentSubject = subject;
+        }
+        if (RDF_TYPE.equals(predicate)) {
+            out.write('a');
+        } else {
+            writeTerm(predicate);
+        }
+        out.write(' ');
+        currentPredicate = predicate;
+    }
+
+    @Override
+    public TurtleWriter iri(String subject, String predicate, String object) throws IOException {
+        start(subject, predicate);
+        writeTerm(object);
+        return this;
+    }
+
+    @Override
+    public TurtleWriter literal(String subject, String predicate, String value) throws IOException {
+        start(subject, predicate);
+        writeString(value);
+        return this;
+    }
+
+    @Override
+    public TurtleWriter typed(String subject, String predicate, String value, String datatype) throws IOException {
+        start(subject, predicate);
+        writeString(value);
+        out.write("^^");
+        writeTerm(datatype);
+        return this;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (currentSubject != null) {
+            out.write(" .\n\n");
+            currentSubject = null;
+            currentPredicate = null;
+        }
+    }
+
+    /**
+     * Writes the iri as prefixed name if possible, in full otherwise.
+     */
+    private void writeTerm(String iri) throws IOException {
+        for (Map.Entry<String, String> entry : namespaces) {
+            String namespace = entry.getKey();
+            if (iri.startsWith(namespace) && isLocalName(iri, namespace.length())) {
+                out.write(entry.getValue());
+                out.write(':');
+                out.write(iri, namespace.length(), iri.length() - namespace.length());
+                return;
+            }
+        }
+        writeIri(iri);
+    }
+
+    /**
+     * Checks if the rest of the iri, from the given position, can be written
+     * as the local part of a prefixed name without escapes. This is a safe
+     * subset of what Turtle allows.
+     */
+    private static boolean isLocalName(String iri, int start) {
+        int length = iri.length();
+        if (start == length) {
+            return true;
+        }
+        for (int i = start; i < length; i++) {
+            char c = iri.charAt(i);
+            boolean valid = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_'
+                    || (i > start && (c == '-' || (c == '.' && i < length - 1)));
+            if (!valid) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,102 @@
+package hylke.dotgen;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Pattern;
+import org.apache.commons.lang3.RegExUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests that the TextNormalizer gives the same results as the regular
+ * expressions the parsers used before.
+ *
+ * @author hylke
+ */
+public class TextNormalizerTest {
+
+    private static final Pattern PATTERN_SPACES = Pattern.compile("[ ]{2,}");
+    private static final Pattern PATTERN_SPACE = Pattern.compile("([ ]+)|(\\[[^ ]+\\])");
+
+    private static final String[] SAMPLES = {
+        "",
+        " ",
+        "\n\t\r ",
+        "plain",
+        "  padded  ",
+        "a  b   c",
+        "a\nb\tc\rd",
+        "a \n\t b",
+        "Req 1 [1]",
+        "name[1]",
+        "[1]name",
+        "[]",
+        "[ ]",
+        "[a] [b]",
+        "[a]b]c d]",
+        "[a[b]",
+        "[[a]]",
+        "a[b\nc]",
+        "ends with [",
+        "ends with ]",
+        "Recommendation /rec/datamodel/nice [2]",
+        "\u000Bvertical\u000Btab\u000B",
+        " non-breaking space ",
+        "Mixed Case Name"
+    };
+
+    /**
+     * The cleaning as done by the parsers before the TextNormalizer existed.
+     */
+    private static String reference(String data, boolean noSpaces) {
+        String clean = StringUtils.replaceChars(data.trim(), "\n\t\r", "   ");
+        if (noSpaces) {
+            clean = RegExUtils.removeAll(clean, PATTERN_SPACE);
+        } else {
+            clean = RegExUtils.replaceAll(clean, PATTERN_SPACES, " ");
+        }
+        return clean;
+    }
+
+    private static void assertSame(TextNormalizer normalizer, String data) {
+        assertEquals(reference(data, true), normalizer.clean(data, true), () -> "noSpaces: '" + data + "'");
+        assertEquals(reference(data, false), normalizer.clean(data, false), () -> "spaces: '" + data + "'");
+        assertEquals(reference(data, true).toLowerCase(Locale.ROOT), normalizer.key(data), () -> "key: '" + data + "'");
+    }
+
+    @Test
+    public void testSamples() {
+        TextNormalizer normalizer = TextNormalizer.get();
+        for (String sample : SAMPLES) {
+            assertSame(normalizer, sample);
+        }
+    }
+
+    @Test
+    public void testRandom() {
+        final String alphabet = "  \n\t\r[[]]aB.-";
+        TextNormalizer normalizer = TextNormalizer.get();
+        Random random = new Random(42);
+        for (int i = 0; i < 20_000; i++) {
+            int length = random.nextInt(20);
+            StringBuilder data = new StringBuilder(length);
+            for (int j = 0; j < length; j++) {
+                data.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            assertSame(normalizer, data.toString());
+        }
+    }
+
+    @Test
+    public void testLongText() {
+        TextNormalizer normalizer = TextNormalizer.get();
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            data.append(" word\t[").append(i).append("]  \n");
+        }
+        assertSame(normalizer, data.toString());
+        assertSame(normalizer, "short [1]");
+    }
+}
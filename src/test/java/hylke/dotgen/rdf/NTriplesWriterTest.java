@@ -0,0 +1,71 @@
+package hylke.dotgen.rdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the escaping of literals and iris by the NTriplesWriter.
+ *
+ * @author hylke
+ */
+public class NTriplesWriterTest {
+
+    private static final String S = "http://example.org/s";
+    private static final String P = "http://example.org/p";
+
+    private static String write(RdfWriterAction action) throws IOException {
+        StringWriter out = new StringWriter();
+        NTriplesWriter writer = new NTriplesWriter(out);
+        writer.writeHeader();
+        action.write(writer);
+        writer.finish();
+        return out.toString();
+    }
+
+    @Test
+    public void testPlainStatements() throws IOException {
+        assertEquals("<http://example.org/s> <http://example.org/p> <http://example.org/o> .\n",
+                write(w -> w.iri(S, P, "http://example.org/o")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"value\" .\n",
+                write(w -> w.literal(S, P, "value")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"5\"^^<http://www.w3.org/2001/XMLSchema#integer> .\n",
+                write(w -> w.typed(S, P, "5", "http://www.w3.org/2001/XMLSchema#integer")));
+    }
+
+    @Test
+    public void testLiteralEscaping() throws IOException {
+        assertEquals("<http://example.org/s> <http://example.org/p> \"a\\\"b\\\\c\" .\n",
+                write(w -> w.literal(S, P, "a\"b\\c")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"1\\n2\\r3\\t4\" .\n",
+                write(w -> w.literal(S, P, "1\n2\r3\t4")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"\\u0000\\u001F\\u007F\" .\n",
+                write(w -> w.literal(S, P, "\u0000\u001F\u007F")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"café ≤ <x>\" .\n",
+                write(w -> w.literal(S, P, "café ≤ <x>")));
+        assertEquals("<http://example.org/s> <http://example.org/p> \"\" .\n",
+                write(w -> w.literal(S, P, "")));
+    }
+
+    @Test
+    public void testIriEscaping() throws IOException {
+        assertEquals("<http://example.org/s> <http://example.org/p> <http://example.org/a%20b%3Cc%3E%22d%5C> .\n",
+                write(w -> w.iri(S, P, "http://example.org/a b<c>\"d\\")));
+        assertEquals("<http://example.org/s> <http://example.org/p> <http://example.org/%7B%7C%7D%5E%60> .\n",
+                write(w -> w.iri(S, P, "http://example.org/{|}^`")));
+        assertEquals("<http://example.org/s> <http://example.org/p> <http://example.org/%0A%09%7F> .\n",
+                write(w -> w.iri(S, P, "http://example.org/\n\t\u007F")));
+        assertEquals("<http://example.org/s%20x> <http://example.org/p> <http://example.org/café#a/b?c=d> .\n",
+                write(w -> w.iri(S + " x", P, "http://example.org/café#a/b?c=d")));
+    }
+
+    /**
+     * Writes statements to the given writer.
+     */
+    static interface RdfWriterAction {
+
+        void write(RdfWriter writer) throws IOException;
+    }
+}
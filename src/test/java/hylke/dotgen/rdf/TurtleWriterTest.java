@@ -0,0 +1,74 @@
+package hylke.dotgen.rdf;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests the prefixed names, grouping and escaping of the TurtleWriter.
+ *
+ * @author hylke
+ */
+public class TurtleWriterTest {
+
+    private static final String EX = "http://example.org/";
+    private static final String HEADER = "@prefix ex: <http://example.org/> .\n"
+            + "@prefix xsd: <http://www.w3.org/2001/XMLSchema#> .\n\n";
+
+    private static String write(NTriplesWriterTest.RdfWriterAction action) throws IOException {
+        Map<String, String> prefixes = new LinkedHashMap<>();
+        prefixes.put("http://www.w3.org/2001/XMLSchema#", "xsd");
+        prefixes.put(EX, "ex");
+        StringWriter out = new StringWriter();
+        TurtleWriter writer = new TurtleWriter(out, prefixes);
+        writer.writeHeader();
+        action.write(writer);
+        writer.finish();
+        return out.toString();
+    }
+
+    @Test
+    public void testGrouping() throws IOException {
+        assertEquals(HEADER
+                + "ex:s a ex:C ;\n"
+                + "    ex:p \"x\",\n"
+                + "        \"y\" ;\n"
+                + "    ex:q \"5\"^^xsd:integer .\n\n"
+                + "ex:t ex:p ex:s .\n\n",
+                write(w -> w.iri(EX + "s", RdfWriter.RDF_TYPE, EX + "C")
+                        .literal(EX + "s", EX + "p", "x")
+                        .literal(EX + "s", EX + "p", "y")
+                        .typed(EX + "s", EX + "q", "5", "http://www.w3.org/2001/XMLSchema#integer")
+                        .iri(EX + "t", EX + "p", EX + "s")));
+    }
+
+    @Test
+    public void testLiteralEscaping() throws IOException {
+        assertEquals(HEADER + "ex:s ex:p \"a\\\"b\\\\c\\n\\r\\t\\u0001\\u007Fé\" .\n\n",
+                write(w -> w.literal(EX + "s", EX + "p", "a\"b\\c\n\r\t\u0001\u007Fé")));
+        assertEquals(HEADER + "ex:s ex:p \"\\\"\\\"\" .\n\n",
+                write(w -> w.literal(EX + "s", EX + "p", "\"\"")));
+    }
+
+    @Test
+    public void testIriEscaping() throws IOException {
+        assertEquals(HEADER + "<http://example.org/a%20b> ex:p <http://example.org/%3Cc%3E%22%7B%7C%7D%5E%60%5C> .\n\n",
+                write(w -> w.iri(EX + "a b", EX + "p", EX + "<c>\"{|}^`\\")));
+        assertEquals(HEADER + "<http://other.org/s> <http://other.org/p> <http://other.org/o%0A> .\n\n",
+                write(w -> w.iri("http://other.org/s", "http://other.org/p", "http://other.org/o\n")));
+    }
+
+    @Test
+    public void testLocalNames() throws IOException {
+        assertEquals(HEADER + "ex: ex:p ex:a.b-c_1 .\n\n",
+                write(w -> w.iri(EX, EX + "p", EX + "a.b-c_1")));
+        assertEquals(HEADER + "<http://example.org/a.> ex:p <http://example.org/-a> .\n\n",
+                write(w -> w.iri(EX + "a.", EX + "p", EX + "-a")));
+        assertEquals(HEADER + "<http://example.org/a/b> ex:p <http://example.org/a#b> .\n\n",
+                write(w -> w.iri(EX + "a/b", EX + "p", EX + "a#b")));
+    }
+}